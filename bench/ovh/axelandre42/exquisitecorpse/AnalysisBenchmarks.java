@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary.Radix;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceAnalyzer;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceBuilder;
+
+/**
+ * Reading one sentence back. The dense radix is used because every sentence
+ * it generates reads back, so no input fails.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class AnalysisBenchmarks {
+    private ReadOnlyDictionary dict;
+    private SentenceParser parser;
+    private String[] plain;
+    private String[][] tokens;
+    private int next;
+
+    @Setup
+    public void setup() {
+        dict = Fixtures.load(Radix.DENSE).freeze();
+        parser = new SentenceParser(dict);
+        long[] values = Fixtures.values();
+        RandomSource random = RandomSource.seeded(42);
+        plain = new String[Fixtures.SENTENCES];
+        tokens = new String[Fixtures.SENTENCES][];
+        for (int i = 0; i < Fixtures.SENTENCES; i++) {
+            SentenceBuilder builder = Fixtures.sentence(dict, values[i], random);
+            plain[i] = builder.build();
+            tokens[i] = builder.buildAnnotated().split(" ");
+        }
+    }
+
+    @Benchmark
+    public String[] parse() {
+        return parser.parse(plain[next++ % Fixtures.SENTENCES]);
+    }
+
+    @Benchmark
+    public long findLong() {
+        return new SentenceAnalyzer(dict, tokens[next++ % Fixtures.SENTENCES]).findLong();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cutting payloads into chunks, and AES in one piece or in segments.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class CryptoBenchmarks {
+    @Param({ "16", "1024", "65536", "1048576" })
+    public int size;
+
+    private byte[] plain;
+    private AES aes;
+    private byte[] encoded;
+    private byte[] segmented;
+
+    @Setup
+    public void setup() {
+        plain = Fixtures.payload(size);
+        aes = new AES(new SecretKeySpec(Fixtures.payload(16), "AES"));
+        encoded = aes.encode(plain);
+        segmented = aes.encodeSegmented(plain);
+    }
+
+    @Benchmark
+    public byte[] longifierRoundTrip() {
+        Longifier longifier = new Longifier(plain);
+        Delongifier delongifier = new Delongifier();
+        while (longifier.hasNext()) {
+            delongifier.pushLong(longifier.nextLong());
+        }
+        return delongifier.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] aesEncode() {
+        return aes.encode(plain);
+    }
+
+    @Benchmark
+    public byte[] aesDecode() {
+        return aes.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] aesEncodeSegmented() {
+        return aes.encodeSegmented(plain);
+    }
+
+    @Benchmark
+    public byte[] aesDecodeSegmented() {
+        return aes.decodeSegmented(segmented);
+    }
+}
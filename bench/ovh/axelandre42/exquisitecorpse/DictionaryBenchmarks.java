@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary.Radix;
+
+/**
+ * Loading the TSV shards, freezing them and mapping a compiled image.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class DictionaryBenchmarks {
+    private Dictionary dict;
+    private File image;
+
+    @Setup
+    public void setup() throws IOException {
+        dict = Fixtures.load(Radix.GROUPED);
+        image = File.createTempFile("dict", ".img");
+        DictionaryImage.write(dict, image);
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.delete();
+    }
+
+    /**
+     * First load of a fresh JVM, as at startup.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public Dictionary loadAllCold() {
+        return Fixtures.load(Radix.GROUPED);
+    }
+
+    @Benchmark
+    public Dictionary loadAll() {
+        return Fixtures.load(Radix.GROUPED);
+    }
+
+    @Benchmark
+    public FrozenDictionary freeze() {
+        return dict.freeze();
+    }
+
+    @Benchmark
+    public DictionaryImage mapImage() throws IOException {
+        return DictionaryImage.map(image);
+    }
+}
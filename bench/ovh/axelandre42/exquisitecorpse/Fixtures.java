@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.File;
+import java.util.Random;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary.Radix;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceBuilder;
+
+/**
+ * Inputs shared by the benchmarks. They are seeded, so every fork measures
+ * the same work.
+ * <p>
+ * The benchmarks run from the project directory, next to {@code dict}.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+final class Fixtures {
+    static final File DICTIONARY = new File("dict");
+    static final int SENTENCES = 1024;
+
+    private Fixtures() {
+    }
+
+    static Dictionary load(Radix radix) {
+        Dictionary dict = new Dictionary(radix);
+        dict.loadAll(DICTIONARY);
+        return dict;
+    }
+
+    static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Chunk values, as {@link Longifier} cuts them.
+     */
+    static long[] values() {
+        long[] values = new long[SENTENCES];
+        Random random = new Random(42);
+        for (int i = 0; i < SENTENCES; i++) {
+            values[i] = random.nextLong() & 0x00FFFFFFFFFFFFFFL;
+        }
+        return values;
+    }
+
+    static SentenceBuilder sentence(ReadOnlyDictionary dict, long value, RandomSource random) {
+        SentenceBuilder builder = new SentenceBuilder(dict, value, random);
+        ExquisiteCorpse.processsSenctence(builder);
+        return builder;
+    }
+}
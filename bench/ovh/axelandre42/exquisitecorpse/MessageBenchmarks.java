@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary.Radix;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceAnalyzer;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceBuilder;
+
+/**
+ * Whole messages, one sentence per chunk, built and decoded one after the
+ * other or by buildAll and decodeAll in parallel. Dense radix, so that every
+ * sentence reads back.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class MessageBenchmarks {
+    @Param({ "1024", "65536" })
+    public int size;
+
+    private ReadOnlyDictionary dict;
+    private SentenceParser parser;
+    private RandomSource random;
+    private byte[] payload;
+    private List<String> sentences;
+
+    @Setup
+    public void setup() {
+        dict = Fixtures.load(Radix.DENSE).freeze();
+        parser = new SentenceParser(dict);
+        random = RandomSource.seeded(42);
+        payload = Fixtures.payload(size);
+        sentences = SentenceBuilder.buildAll(dict, payload, false, 42);
+    }
+
+    @Benchmark
+    public void buildSequential(Blackhole blackhole) {
+        Longifier longifier = new Longifier(payload);
+        while (longifier.hasNext()) {
+            blackhole.consume(Fixtures.sentence(dict, longifier.nextLong(), random).build());
+        }
+    }
+
+    @Benchmark
+    public List<String> buildAll() {
+        return SentenceBuilder.buildAll(dict, payload, false, 42);
+    }
+
+    @Benchmark
+    public byte[] decodeSequential() {
+        Delongifier delongifier = new Delongifier();
+        for (String sentence : sentences) {
+            delongifier.pushLong(new SentenceAnalyzer(dict, parser.tokens(sentence)).findLong());
+        }
+        return delongifier.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] decodeAll() throws IOException {
+        return SentenceAnalyzer.decodeAll(dict, sentences, 0);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary.Radix;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceBuilder;
+
+/**
+ * Generating and rendering the sentence of one chunk, from each kind of
+ * dictionary. Every source runs in its own forks, so their call sites don't
+ * share profiles.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SentenceBenchmarks {
+    @Param({ "image", "frozen", "dense" })
+    public String source;
+
+    private ReadOnlyDictionary dict;
+    private long[] values;
+    private RandomSource random;
+    private int next;
+    private SentenceBuilder built;
+    private StringBuilder rendered = new StringBuilder();
+
+    @Setup
+    public void setup() throws IOException {
+        switch (source) {
+        case "image":
+            File image = File.createTempFile("dict", ".img");
+            image.deleteOnExit();
+            DictionaryImage.write(Fixtures.load(Radix.GROUPED), image);
+            dict = DictionaryImage.map(image);
+            break;
+        case "frozen":
+            dict = Fixtures.load(Radix.GROUPED).freeze();
+            break;
+        default:
+            dict = Fixtures.load(Radix.DENSE).freeze();
+            break;
+        }
+        values = Fixtures.values();
+        random = RandomSource.seeded(42);
+        built = Fixtures.sentence(dict, values[0], random);
+    }
+
+    @Benchmark
+    public SentenceBuilder generate() {
+        return Fixtures.sentence(dict, values[next++ % Fixtures.SENTENCES], random);
+    }
+
+    @Benchmark
+    public String build() {
+        return built.build();
+    }
+
+    @Benchmark
+    public String buildAnnotated() {
+        return built.buildAnnotated();
+    }
+
+    @Benchmark
+    public StringBuilder buildTo() throws IOException {
+        rendered.setLength(0);
+        return built.buildTo(rendered);
+    }
+}
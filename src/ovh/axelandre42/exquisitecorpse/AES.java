@@ -22,38 +22,176 @@
  */
 package ovh.axelandre42.exquisitecorpse;
 
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.stream.IntStream;
+
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 
 /**
  * @author Alexandre Waeles <www.axelandre42.ovh>
  *
  */
 public class AES {
+    /**
+     * Plaintext bytes per segment of the segmented mode.
+     */
+    public static final int SEGMENT_SIZE = 64 * 1024;
+
+    private static final int PREFIX_LENGTH = 8;
+    private static final int TAG_LENGTH = 16;
 
     private SecretKey key;
+    private SecureRandom random = new SecureRandom();
+
+    // Cipher lookup is costly, so each thread keeps its own initialized ciphers.
+    private ThreadLocal<Cipher> encoders = ThreadLocal.withInitial(() -> newCipher(Cipher.ENCRYPT_MODE));
+    private ThreadLocal<Cipher> decoders = ThreadLocal.withInitial(() -> newCipher(Cipher.DECRYPT_MODE));
+    private ThreadLocal<Cipher> segmentCiphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (Exception e) {
+            throw new RuntimeException("Exception during cipher initialization.", e);
+        }
+    });
     
     public AES(SecretKey key) {
         this.key = key;
     }
     
     public byte[] encode(byte[] plain) {
+        long start = Metrics.start();
+        Events.Crypto event = new Events.Crypto();
+        event.begin();
         try {
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, key);
-            return cipher.doFinal(plain);
+            return encoders.get().doFinal(plain);
         } catch (Exception e) {
+            encoders.remove();
             throw new RuntimeException("Exception during encoding.", e);
+        } finally {
+            Metrics.AES_ENCODE.record(start);
+            event.operation = "aes.encode";
+            event.size = plain.length;
+            event.commit();
         }
     }
     
     public byte[] decode(byte[] encoded) {
+        long start = Metrics.start();
+        Events.Crypto event = new Events.Crypto();
+        event.begin();
+        try {
+            return decoders.get().doFinal(encoded);
+        } catch (Exception e) {
+            decoders.remove();
+            throw new RuntimeException("Exception during decoding.", e);
+        } finally {
+            Metrics.AES_DECODE.record(start);
+            event.operation = "aes.decode";
+            event.size = encoded.length;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Returns a cipher ready for incremental processing with update() and a
+     * final doFinal().
+     */
+    public Cipher newCipher(int mode) {
         try {
             Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, key);
-            return cipher.doFinal(encoded);
+            cipher.init(mode, key);
+            return cipher;
+        } catch (Exception e) {
+            throw new RuntimeException("Exception during cipher initialization.", e);
+        }
+    }
+    
+    /**
+     * Encrypts with AES/GCM in independent segments of {@link #SEGMENT_SIZE}
+     * bytes, processed in parallel.
+     * <p>
+     * The output is a random 8-byte prefix followed by the segments, each with
+     * its own tag. A segment's nonce is the prefix and its index, and the last
+     * segment is flagged in the associated data, so segments can't be
+     * reordered or dropped. This is not compatible with {@link #encode(byte[])}.
+     */
+    public byte[] encodeSegmented(byte[] plain) {
+        long start = Metrics.start();
+        Events.Crypto event = new Events.Crypto();
+        event.begin();
+        try {
+            int segments = Math.max(1, (plain.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            byte[] encoded = new byte[PREFIX_LENGTH + plain.length + segments * TAG_LENGTH];
+            byte[] prefix = new byte[PREFIX_LENGTH];
+            random.nextBytes(prefix);
+            System.arraycopy(prefix, 0, encoded, 0, PREFIX_LENGTH);
+            IntStream.range(0, segments).parallel().forEach(i -> {
+                int offset = i * SEGMENT_SIZE;
+                int length = Math.min(SEGMENT_SIZE, plain.length - offset);
+                Cipher cipher = segmentCiphers.get();
+                try {
+                    initSegment(cipher, Cipher.ENCRYPT_MODE, prefix, i, i == segments - 1);
+                    cipher.doFinal(plain, offset, length, encoded, PREFIX_LENGTH + offset + i * TAG_LENGTH);
+                } catch (Exception e) {
+                    segmentCiphers.remove();
+                    throw new RuntimeException("Exception during encoding.", e);
+                }
+            });
+            return encoded;
+        } catch (Exception e) {
+            throw new RuntimeException("Exception during encoding.", e);
+        } finally {
+            Metrics.AES_ENCODE_SEGMENTED.record(start);
+            event.operation = "aes.encodeSegmented";
+            event.size = plain.length;
+            event.commit();
+        }
+    }
+    
+    public byte[] decodeSegmented(byte[] encoded) {
+        long start = Metrics.start();
+        Events.Crypto event = new Events.Crypto();
+        event.begin();
+        try {
+            int length = encoded.length - PREFIX_LENGTH;
+            int segments = Math.max(1, (length + SEGMENT_SIZE + TAG_LENGTH - 1) / (SEGMENT_SIZE + TAG_LENGTH));
+            if (length < segments * TAG_LENGTH) {
+                throw new IllegalArgumentException("Truncated message.");
+            }
+            byte[] prefix = new byte[PREFIX_LENGTH];
+            System.arraycopy(encoded, 0, prefix, 0, PREFIX_LENGTH);
+            byte[] plain = new byte[length - segments * TAG_LENGTH];
+            IntStream.range(0, segments).parallel().forEach(i -> {
+                int offset = PREFIX_LENGTH + i * (SEGMENT_SIZE + TAG_LENGTH);
+                int segmentLength = Math.min(SEGMENT_SIZE + TAG_LENGTH, encoded.length - offset);
+                Cipher cipher = segmentCiphers.get();
+                try {
+                    initSegment(cipher, Cipher.DECRYPT_MODE, prefix, i, i == segments - 1);
+                    cipher.doFinal(encoded, offset, segmentLength, plain, i * SEGMENT_SIZE);
+                } catch (Exception e) {
+                    segmentCiphers.remove();
+                    throw new RuntimeException("Exception during decoding.", e);
+                }
+            });
+            return plain;
         } catch (Exception e) {
             throw new RuntimeException("Exception during decoding.", e);
+        } finally {
+            Metrics.AES_DECODE_SEGMENTED.record(start);
+            event.operation = "aes.decodeSegmented";
+            event.size = encoded.length;
+            event.commit();
         }
     }
+    
+    private void initSegment(Cipher cipher, int mode, byte[] prefix, int index, boolean last) throws Exception {
+        ByteBuffer nonce = ByteBuffer.allocate(PREFIX_LENGTH + Integer.BYTES);
+        nonce.put(prefix);
+        nonce.putInt(index);
+        cipher.init(mode, key, new GCMParameterSpec(8 * TAG_LENGTH, nonce.array()));
+        cipher.updateAAD(new byte[] { (byte) (last ? 1 : 0) });
+    }
 }
@@ -40,6 +40,9 @@ public class DH {
     private KeyAgreement agreement;
     
     public PublicKey generatePublicKey() {
+        long start = Metrics.start();
+        Events.Crypto event = new Events.Crypto();
+        event.begin();
         try {
             KeyPairGenerator gen = KeyPairGenerator.getInstance("EC");
             gen.initialize(128);
@@ -48,10 +51,17 @@ public class DH {
             return pair.getPublic();
         } catch (Exception e) {
             throw new RuntimeException("Exception during public key generation.", e);
+        } finally {
+            Metrics.DH_GENERATE.record(start);
+            event.operation = "dh.generate";
+            event.commit();
         }
     }
     
     public SecretKey computeSharedKey(PublicKey key) {
+        long start = Metrics.start();
+        Events.Crypto event = new Events.Crypto();
+        event.begin();
         try {
             agreement = KeyAgreement.getInstance("ECDH");
             agreement.init(pair.getPrivate());
@@ -61,6 +71,13 @@ public class DH {
             return new SecretKeySpec(agreement.generateSecret(), "AES");
         } catch (Exception e) {
             throw new RuntimeException("Exception during shared key compute.", e);
+        } finally {
+            Metrics.DH_AGREE.record(start);
+            event.operation = "dh.agree";
+            if (event.isEnabled()) {
+                event.size = key.getEncoded().length;
+            }
+            event.commit();
         }
     }
 }
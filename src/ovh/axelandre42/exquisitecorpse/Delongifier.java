@@ -22,29 +22,93 @@
  */
 package ovh.axelandre42.exquisitecorpse;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
 
 /**
+ * Unpacks the chunks made by {@link Longifier}.
+ *
  * @author Alexandre Waeles <www.axelandre42.ovh>
  *
  */
 public class Delongifier {
-    private ByteArrayOutputStream stream;
+    private ByteBuffer target;
+    private int start;
+    private boolean growable;
     
     public Delongifier() {
-        stream = new ByteArrayOutputStream();
+        this(ByteBuffer.allocate(64));
+        growable = true;
+    }
+    
+    /**
+     * Writes the chunks into the buffer, from its current position.
+     */
+    public Delongifier(ByteBuffer target) {
+        this.target = target;
+        this.start = target.position();
     }
     
     public void pushLong(long value) {
-        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
-        buffer.putLong(value);
-        byte[] array = buffer.array();
-        int offset = array[0] + 1;
-        stream.write(array, offset, array.length - offset);
+        int offset = 8 - length(value);
+        if (growable && target.remaining() < 8 - offset) {
+            ByteBuffer larger = ByteBuffer.allocate(target.capacity() * 2);
+            target.flip();
+            larger.put(target);
+            target = larger;
+        }
+        for (int i = offset; i < 8; i++) {
+            target.put((byte) (value >>> (8 * (7 - i))));
+        }
     }
     
+    /**
+     * Unpacks chunks computed independently, in parallel. Chunk i goes
+     * straight to byte 7 * i of the result, so every chunk but the last must
+     * be full, as {@link Longifier} makes them.
+     */
+    public static byte[] unpackAll(int count, IntToLongFunction chunks) {
+        if (count == 0) {
+            return new byte[0];
+        }
+        long last = chunks.applyAsLong(count - 1);
+        byte[] bytes = new byte[7 * (count - 1) + length(last)];
+        unpack(last, bytes, 7 * (count - 1));
+        IntStream.range(0, count - 1).parallel().forEach(i -> {
+            long value = chunks.applyAsLong(i);
+            if (length(value) != 7) {
+                throw new IllegalArgumentException("Short chunk before the last one.");
+            }
+            unpack(value, bytes, 7 * i);
+        });
+        return bytes;
+    }
+
+    /**
+     * Number of bytes held by a chunk.
+     */
+    private static int length(long value) {
+        int missing = (int) (value >>> 56);
+        if (missing > 7) {
+            throw new IllegalArgumentException("Invalid chunk length.");
+        }
+        return 7 - missing;
+    }
+
+    private static void unpack(long value, byte[] target, int offset) {
+        int length = length(value);
+        for (int i = 0; i < length; i++) {
+            target[offset + i] = (byte) (value >>> (8 * (length - 1 - i)));
+        }
+    }
+
     public byte[] toByteArray() {
-        return stream.toByteArray();
+        ByteBuffer written = target.duplicate();
+        written.flip();
+        written.position(start);
+        byte[] bytes = new byte[written.remaining()];
+        written.get(bytes);
+        return bytes;
     }
 }
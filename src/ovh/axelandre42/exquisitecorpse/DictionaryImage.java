@@ -0,0 +1,368 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary.Radix;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.util.IntList;
+import ovh.axelandre42.exquisitecorpse.util.WordAutomaton;
+
+/**
+ * Read-only dictionary served straight from a precompiled, memory-mapped
+ * binary image.
+ * <p>
+ * The image holds a string pool and, for each part of speech, the lemmas in
+ * index order with their forms, the packed {@link Morphology} of each form
+ * and a hash table from surface form to lemma index. Word objects are only
+ * created when a lemma is selected. The header carries the fingerprint of the
+ * image for each radix mode, so mapping it doesn't hash every form.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class DictionaryImage extends ReadOnlyDictionary {
+    private static final int MAGIC = 0x45434449; // "ECDI"
+    private static final int VERSION = 3;
+
+    private static final class Section implements WordTable {
+        private final ByteBuffer pool;
+        private final int lemmaCount;
+        private final IntBuffer lemmaStart;
+        private final IntBuffer formString;
+        private final IntBuffer formMorphology;
+        private final IntBuffer slots;
+        private final int slotMask;
+        // Built by the first correction, as most sessions never need one.
+        private volatile Index index;
+
+        /**
+         * Reads the next section of the buffer.
+         */
+        private Section(ByteBuffer buffer, ByteBuffer pool) {
+            this.pool = pool;
+            lemmaCount = buffer.getInt();
+            int formCount = buffer.getInt();
+            int slotCount = buffer.getInt();
+            lemmaStart = ints(buffer, lemmaCount + 1);
+            formString = ints(buffer, formCount);
+            formMorphology = ints(buffer, formCount);
+            slots = ints(buffer, 2 * slotCount);
+            slotMask = slotCount - 1;
+        }
+
+        @Override
+        public int lemmaCount() {
+            return lemmaCount;
+        }
+
+        @Override
+        public int formCount(int lemma) {
+            return lemmaStart.get(lemma + 1) - lemmaStart.get(lemma);
+        }
+
+        @Override
+        public String word(int lemma, int form) {
+            return string(formString.get(lemmaStart.get(lemma) + form));
+        }
+
+        @Override
+        public int morphology(int lemma, int form) {
+            return formMorphology.get(lemmaStart.get(lemma) + form);
+        }
+
+        @Override
+        public int findLemma(String word) {
+            int slot = formId(word);
+            return slot < 0 ? -1 : slots.get(2 * slot + 1);
+        }
+
+        @Override
+        public int formIds() {
+            return slotMask + 1;
+        }
+
+        // Forms are identified by their hash slot.
+        @Override
+        public int formId(String word) {
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            int slot = spread(word.hashCode()) & slotMask;
+            while (true) {
+                int offset = slots.get(2 * slot);
+                if (offset < 0) {
+                    return -1;
+                }
+                if (matches(offset, bytes)) {
+                    return slot;
+                }
+                slot = (slot + 1) & slotMask;
+            }
+        }
+
+        @Override
+        public int formId(int lemma, int form) {
+            return formId(word(lemma, form));
+        }
+
+        @Override
+        public String nearest(String word, int maxCost, IntPredicate filter) {
+            Index index = index();
+            int ordinal = index.automaton.nearest(word, maxCost, o -> filter.test(index.slots[o]));
+            return ordinal < 0 ? null : index.automaton.string(ordinal);
+        }
+
+        private Index index() {
+            Index index = this.index;
+            if (index == null) {
+                synchronized (this) {
+                    index = this.index;
+                    if (index == null) {
+                        this.index = index = new Index(this);
+                    }
+                }
+            }
+            return index;
+        }
+
+        private boolean matches(int offset, byte[] bytes) {
+            if ((pool.getShort(offset) & 0xFFFF) != bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                if (pool.get(offset + 2 + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String string(int offset) {
+            byte[] bytes = new byte[pool.getShort(offset) & 0xFFFF];
+            ByteBuffer view = pool.duplicate();
+            view.position(offset + 2);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Automaton of the forms of a section, for {@link WordTable#nearest}.
+     */
+    private static final class Index {
+        private final WordAutomaton automaton;
+        // Hash slot, that is form identifier, of each ordinal.
+        private final int[] slots;
+
+        private Index(Section section) {
+            IntList used = new IntList(section.slotMask + 1);
+            for (int slot = 0; slot <= section.slotMask; slot++) {
+                if (section.slots.get(2 * slot) >= 0) {
+                    used.add(slot);
+                }
+            }
+            String[] words = new String[used.size()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = section.string(section.slots.get(2 * used.get(i)));
+            }
+            String[] sorted = words.clone();
+            Arrays.sort(sorted);
+            automaton = new WordAutomaton(sorted);
+            slots = new int[sorted.length];
+            for (int i = 0; i < words.length; i++) {
+                slots[automaton.ordinal(words[i])] = used.get(i);
+            }
+        }
+    }
+
+    private DictionaryImage(Radix radix, long fingerprint, Section adverbs, Section nouns, Section adjectives,
+            Section verbs) {
+        super(radix, fingerprint, adverbs, nouns, adjectives, verbs);
+    }
+
+    public static DictionaryImage map(File file) throws IOException {
+        return map(file, Radix.GROUPED);
+    }
+
+    public static DictionaryImage map(File file, Radix radix) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalArgumentException("Not a dictionary image.");
+            }
+            int fingerprints = buffer.getInt();
+            if (radix.ordinal() >= fingerprints) {
+                throw new IllegalArgumentException("The image has no " + radix + " fingerprint.");
+            }
+            long fingerprint = buffer.getLong(buffer.position() + radix.ordinal() * Long.BYTES);
+            buffer.position(buffer.position() + fingerprints * Long.BYTES);
+            ByteBuffer pool = pool(buffer.duplicate());
+            // Arguments are evaluated in order, which is the order of the sections.
+            return new DictionaryImage(radix, fingerprint, new Section(buffer, pool), new Section(buffer, pool),
+                    new Section(buffer, pool), new Section(buffer, pool));
+        }
+    }
+
+    /**
+     * Skips the four sections to the string pool.
+     */
+    private static ByteBuffer pool(ByteBuffer buffer) {
+        for (int i = 0; i < 4; i++) {
+            int lemmaCount = buffer.getInt();
+            int formCount = buffer.getInt();
+            int slotCount = buffer.getInt();
+            buffer.position(buffer.position() + (lemmaCount + 1 + 2 * formCount + 2 * slotCount) * Integer.BYTES);
+        }
+        int poolSize = buffer.getInt();
+        ByteBuffer pool = buffer.slice();
+        pool.limit(poolSize);
+        return pool;
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int count) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(count * Integer.BYTES);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return slice.asIntBuffer();
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Compiles a loaded dictionary into an image, keeping its lemma indices.
+     */
+    public static void write(Dictionary dict, File file) throws IOException {
+        ImageWriter writer = new ImageWriter();
+        int[][][] sections = { writer.section(dict.getAdverbTable()), writer.section(dict.getNounTable()),
+                writer.section(dict.getAdjectiveTable()), writer.section(dict.getVerbTable()) };
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(Radix.values().length);
+            for (Radix radix : Radix.values()) {
+                out.writeLong(radix == dict.getRadix() ? dict.fingerprint() : dict.fingerprint(radix));
+            }
+            for (int[][] section : sections) {
+                out.writeInt(section[0].length - 1);
+                out.writeInt(section[1].length);
+                out.writeInt(section[3].length / 2);
+                for (int[] array : section) {
+                    for (int value : array) {
+                        out.writeInt(value);
+                    }
+                }
+            }
+            out.writeInt(writer.pool.size());
+            writer.pool.writeTo(out);
+        }
+    }
+
+    private static class ImageWriter {
+        private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private Map<String, Integer> strings = new HashMap<>();
+
+        private int intern(String value) {
+            Integer offset = strings.get(value);
+            if (offset == null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                offset = pool.size();
+                pool.write(bytes.length >>> 8);
+                pool.write(bytes.length);
+                pool.write(bytes, 0, bytes.length);
+                strings.put(value, offset);
+            }
+            return offset;
+        }
+
+        /**
+         * Returns lemma starts, form strings, form morphologies and hash slots.
+         */
+        private int[][] section(WordTable table) {
+            int lemmaCount = table.lemmaCount();
+            int[] lemmaStart = new int[lemmaCount + 1];
+            IntList formString = new IntList(1024);
+            IntList formMorphology = new IntList(1024);
+            Map<String, Integer> lemmaOf = new LinkedHashMap<>();
+            for (int lemma = 0; lemma < lemmaCount; lemma++) {
+                lemmaStart[lemma] = formString.size();
+                for (int form = 0; form < table.formCount(lemma); form++) {
+                    String word = table.word(lemma, form);
+                    formString.add(intern(word));
+                    formMorphology.add(table.morphology(lemma, form));
+                    lemmaOf.putIfAbsent(word, lemma);
+                }
+            }
+            lemmaStart[lemmaCount] = formString.size();
+
+            int slotCount = Integer.highestOneBit(Math.max(1, lemmaOf.size()) * 2 - 1) * 2;
+            int[] slots = new int[2 * slotCount];
+            Arrays.fill(slots, -1);
+            for (Map.Entry<String, Integer> entry : lemmaOf.entrySet()) {
+                int slot = spread(entry.getKey().hashCode()) & (slotCount - 1);
+                while (slots[2 * slot] >= 0) {
+                    slot = (slot + 1) & (slotCount - 1);
+                }
+                slots[2 * slot] = intern(entry.getKey());
+                slots[2 * slot + 1] = entry.getValue();
+            }
+
+            return new int[][] { lemmaStart, formString.toArray(), formMorphology.toArray(), slots };
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: DictionaryImage <dictionary directory> <image file>");
+            return;
+        }
+        try {
+            Dictionary dict = new Dictionary();
+            System.out.printf("Loading %s...\n", args[0]);
+            dict.loadAll(new File(args[0]));
+            write(dict, new File(args[1]));
+            System.out.printf("Wrote %s.\n", args[1]);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
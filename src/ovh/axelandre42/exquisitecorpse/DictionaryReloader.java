@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary.Radix;
+
+/**
+ * Keeps the dictionary of a directory up to date without blocking its users.
+ * <p>
+ * New versions are loaded and frozen on a background thread, then swapped in
+ * atomically. Callers take {@link #current()} once per message and keep that
+ * snapshot, so a message in progress finishes on the version it started
+ * with. The last few versions stay reachable by fingerprint for decoding
+ * messages encoded just before a swap.
+ * <p>
+ * A version is only swapped in when no shard changed while it was loaded.
+ * Failed loads are counted in {@link Metrics} and recorded as
+ * {@link Events.DictionaryReload} events, and the current version is kept.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public class DictionaryReloader implements Closeable {
+    private static final int KEPT_VERSIONS = 4;
+    // Loads that find the shards changed before giving up until the next check.
+    private static final int LOAD_ATTEMPTS = 3;
+
+    private File directory;
+    private Radix radix;
+    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dictionary-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AtomicReference<FrozenDictionary> current = new AtomicReference<>();
+    // Replaced, never modified, so readers don't lock.
+    private volatile Map<Long, FrozenDictionary> versions = Collections.emptyMap();
+    private long stamp;
+
+    /**
+     * Loads the directory before returning.
+     */
+    public DictionaryReloader(File directory) {
+        this(directory, Radix.GROUPED);
+    }
+
+    public DictionaryReloader(File directory, Radix radix) {
+        this.directory = directory;
+        this.radix = radix;
+        swap(load());
+    }
+
+    public FrozenDictionary current() {
+        return current.get();
+    }
+
+    /**
+     * Returns the kept version with this fingerprint, or null.
+     */
+    public FrozenDictionary version(long fingerprint) {
+        return versions.get(fingerprint);
+    }
+
+    /**
+     * Loads the directory again in the background and swaps the result in.
+     */
+    public Future<FrozenDictionary> reload() {
+        return executor.submit(() -> {
+            FrozenDictionary dict = load();
+            swap(dict);
+            return dict;
+        });
+    }
+
+    /**
+     * Checks the directory at a fixed period and reloads it when its shards
+     * changed.
+     */
+    public void watch(long period, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(() -> {
+            if (stamp() != stamp) {
+                try {
+                    swap(load());
+                } catch (RuntimeException e) {
+                    // Already recorded by load(). Keep serving the current version until the files change.
+                }
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Loads the directory into a new dictionary, and again if a shard changed
+     * meanwhile, so the result is that of a single state of the files. Keeps
+     * the stamp of that state, even if the files don't load, so they are only
+     * tried again once they change.
+     */
+    private FrozenDictionary load() {
+        Events.DictionaryReload event = new Events.DictionaryReload();
+        event.begin();
+        try {
+            for (int attempt = 1; attempt <= LOAD_ATTEMPTS; attempt++) {
+                event.attempts = attempt;
+                long before = stamp();
+                FrozenDictionary frozen;
+                try {
+                    Dictionary dict = new Dictionary(radix);
+                    dict.loadAll(directory);
+                    frozen = dict.freeze();
+                } catch (RuntimeException e) {
+                    if (stamp() != before) {
+                        // Probably read while being written.
+                        continue;
+                    }
+                    stamp = before;
+                    throw e;
+                }
+                if (stamp() == before) {
+                    stamp = before;
+                    event.fingerprint = Long.toHexString(frozen.fingerprint());
+                    return frozen;
+                }
+            }
+            throw new IllegalStateException("The shards of " + directory + " kept changing while loading.");
+        } catch (RuntimeException e) {
+            Metrics.DICTIONARY_RELOAD_FAILED.increment();
+            event.failure = e.toString();
+            throw e;
+        } finally {
+            event.directory = directory.getPath();
+            event.commit();
+        }
+    }
+
+    private synchronized void swap(FrozenDictionary dict) {
+        Map<Long, FrozenDictionary> next = new LinkedHashMap<>(versions);
+        next.remove(dict.fingerprint());
+        next.put(dict.fingerprint(), dict);
+        while (next.size() > KEPT_VERSIONS) {
+            next.remove(next.keySet().iterator().next());
+        }
+        versions = next;
+        current.set(dict);
+    }
+
+    /**
+     * Changes whenever a shard is added, removed, rewritten or resized.
+     */
+    private long stamp() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".tsv"));
+        if (files == null) {
+            return 0;
+        }
+        Arrays.sort(files);
+        long stamp = files.length;
+        for (File file : files) {
+            stamp = 31 * stamp + file.getName().hashCode();
+            stamp = 31 * stamp + file.lastModified();
+            stamp = 31 * stamp + file.length();
+        }
+        return stamp;
+    }
+}
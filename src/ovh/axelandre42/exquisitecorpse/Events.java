@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events of the dictionary, sentence and crypto phases.
+ * <p>
+ * They are only committed while a recording has them enabled; otherwise
+ * begin() and commit() do nothing and the event object is optimized away.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class Events {
+
+    private Events() {
+    }
+
+    @Name("ovh.axelandre42.exquisitecorpse.ShardLoad")
+    @Label("Dictionary Shard Load")
+    @Description("Parsing of one dictionary TSV file")
+    @Category({ "Exquisite Corpse", "Dictionary" })
+    public static class ShardLoad extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Lines")
+        public int lines;
+
+        @Label("Forms")
+        @Description("Forms kept from the file")
+        public int forms;
+    }
+
+    @Name("ovh.axelandre42.exquisitecorpse.DictionaryReload")
+    @Label("Dictionary Reload")
+    @Description("Loading of a new dictionary version by DictionaryReloader")
+    @Category({ "Exquisite Corpse", "Dictionary" })
+    public static class DictionaryReload extends Event {
+        @Label("Directory")
+        public String directory;
+
+        @Label("Attempts")
+        @Description("Loads made, counting those during which a shard changed")
+        public int attempts;
+
+        @Label("Fingerprint")
+        @Description("Fingerprint of the loaded version, if any")
+        public String fingerprint;
+
+        @Label("Failure")
+        @Description("Why no version was loaded, if so")
+        public String failure;
+    }
+
+    @Name("ovh.axelandre42.exquisitecorpse.SentenceBuild")
+    @Label("Sentence Build")
+    @Description("Generation of the sentence carrying one chunk")
+    @Category({ "Exquisite Corpse", "Sentence" })
+    public static class SentenceBuild extends Event {
+        @Label("Form")
+        @Description("Number of the sentence template in its table, from 1")
+        public int form;
+
+        @Label("Words")
+        public int words;
+    }
+
+    @Name("ovh.axelandre42.exquisitecorpse.SentenceAnalysis")
+    @Label("Sentence Analysis")
+    @Description("Decoding of the chunk carried by one sentence")
+    @Category({ "Exquisite Corpse", "Sentence" })
+    public static class SentenceAnalysis extends Event {
+        @Label("Tokens")
+        public int tokens;
+
+        @Label("Unknown Words")
+        public int unknownWords;
+
+        @Label("Corrected Words")
+        public int correctedWords;
+    }
+
+    @Name("ovh.axelandre42.exquisitecorpse.Crypto")
+    @Label("Crypto Operation")
+    @Description("AES encoding or decoding, DH key generation or agreement")
+    @Category({ "Exquisite Corpse", "Crypto" })
+    public static class Crypto extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Payload Size")
+        @DataAmount
+        public int size;
+    }
+}
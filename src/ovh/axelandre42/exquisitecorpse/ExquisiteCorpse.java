@@ -23,18 +23,41 @@
 package ovh.axelandre42.exquisitecorpse;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.crypto.SecretKey;
 
-import ovh.axelandre42.exquisitecorpse.util.BiKeyMap;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary.Radix;
+import ovh.axelandre42.exquisitecorpse.Morphology.Amount;
+import ovh.axelandre42.exquisitecorpse.Morphology.Gender;
+import ovh.axelandre42.exquisitecorpse.Morphology.Person;
+import ovh.axelandre42.exquisitecorpse.Morphology.Tense;
+import ovh.axelandre42.exquisitecorpse.Morphology.Type;
+import ovh.axelandre42.exquisitecorpse.SentenceTemplates.Part;
+import ovh.axelandre42.exquisitecorpse.util.EditDistance;
+import ovh.axelandre42.exquisitecorpse.util.IntBiKeyMap;
+import ovh.axelandre42.exquisitecorpse.util.IntList;
+import ovh.axelandre42.exquisitecorpse.util.TsvTokenizer;
 
 /**
  * @author Alexandre Waeles <www.axelandre42.ovh>
@@ -43,83 +66,237 @@ import ovh.axelandre42.exquisitecorpse.util.BiKeyMap;
 public class ExquisiteCorpse {
     public static class SentenceAnalyzer {
         private String[] tokens;
-        private Dictionary dict;
+        private ReadOnlyDictionary dict;
+        private int maxEdits;
 
-        public SentenceAnalyzer(Dictionary dict, String[] tokens) {
+        public SentenceAnalyzer(ReadOnlyDictionary dict, String[] tokens) {
             this.dict = dict;
             this.tokens = tokens;
         }
 
+        /**
+         * Reads an unknown word as the closest known one at most maxEdits edits away, for text typed
+         * back by hand. See {@link ReadOnlyDictionary#correct(Part, String, int)}.
+         */
+        public SentenceAnalyzer correcting(int maxEdits) {
+            this.maxEdits = maxEdits;
+            return this;
+        }
+
         public long findLong() {
+            long start = Metrics.start();
+            Events.SentenceAnalysis event = new Events.SentenceAnalysis();
+            event.begin();
             long value = 0;
 
             for (int i = tokens.length - 1; i >= 0; i--) {
-                String[] elements = tokens[i].split(":");
-                int v, mod;
-                if (elements[0].equals("Adj")) {
-                    v = dict.getIndexForAdjective(elements[1]);
-                    mod = dict.getAdjectiveAmount();
-                } else if (elements[0].equals("Nom")) {
-                    v = dict.getIndexForNoun(elements[1]);
-                    mod = dict.getNounAmount();
-                } else if (elements[0].equals("Ver")) {
-                    v = dict.getIndexForVerb(elements[1]);
-                    mod = dict.getVerbAmount();
-                } else if (elements[0].equals("Adv")) {
-                    v = dict.getIndexForAdverb(elements[1]);
-                    mod = dict.getAdverbAmount();
-                } else {
+                // Keeps the empty word of "Nom:", a few lemmas have empty forms.
+                String[] elements = tokens[i].split(":", 2);
+                Part part = Part.parse(elements[0]);
+                if (part == null) {
                     continue;
                 }
-                value *= mod;
+                int v = index(part, elements[1], event);
+                value *= dict.getAmount(part);
                 value += v;
             }
 
+            Metrics.SENTENCE_ANALYZE.record(start);
+            event.tokens = tokens.length;
+            event.commit();
             return value;
         }
+
+        /**
+         * Appends the digit and radix of every word, first word first, for
+         * {@link SentenceCodec}. An unknown word gives a -1 digit.
+         */
+        public void findDigits(IntList digits, IntList radices) {
+            long start = Metrics.start();
+            Events.SentenceAnalysis event = new Events.SentenceAnalysis();
+            event.begin();
+
+            for (String token : tokens) {
+                String[] elements = token.split(":", 2);
+                Part part = Part.parse(elements[0]);
+                if (part == null) {
+                    continue;
+                }
+                int v = index(part, elements[1], event);
+                digits.add(v);
+                radices.add(dict.getAmount(part));
+            }
+
+            Metrics.SENTENCE_ANALYZE.record(start);
+            event.tokens = tokens.length;
+            event.commit();
+        }
+
+        /**
+         * Decodes the sentences of a message, annotated or plain, and returns the bytes cut by
+         * {@link Longifier}. Each sentence is one chunk and they are decoded in parallel. A leading
+         * {@code Dict:} line must name this dictionary.
+         *
+         * @param maxEdits see {@link #correcting(int)}
+         * @throws IOException if the {@code Dict:} line is malformed or names another dictionary
+         */
+        public static byte[] decodeAll(ReadOnlyDictionary dict, List<String> sentences, int maxEdits)
+                throws IOException {
+            if (!sentences.isEmpty() && sentences.get(0).startsWith(SentenceOutputStream.HEADER)) {
+                if (SentenceOutputStream.fingerprint(sentences.get(0)) != dict.fingerprint()) {
+                    throw new IOException("Message was encoded with another dictionary version.");
+                }
+                sentences = sentences.subList(1, sentences.size());
+            }
+            List<String> lines = sentences;
+            SentenceParser parser = new SentenceParser(dict);
+            return Delongifier.unpackAll(lines.size(),
+                    i -> new SentenceAnalyzer(dict, parser.tokens(lines.get(i))).correcting(maxEdits).findLong());
+        }
+
+        /**
+         * Decodes with the version named by the leading {@code Dict:} line, or the current one if
+         * there is none.
+         *
+         * @throws IOException if the {@code Dict:} line is malformed or names no kept version
+         */
+        public static byte[] decodeAll(DictionaryReloader dictionaries, List<String> sentences, int maxEdits)
+                throws IOException {
+            ReadOnlyDictionary dict = dictionaries.current();
+            if (!sentences.isEmpty() && sentences.get(0).startsWith(SentenceOutputStream.HEADER)) {
+                long fingerprint = SentenceOutputStream.fingerprint(sentences.get(0));
+                dict = dictionaries.version(fingerprint);
+                if (dict == null) {
+                    throw new IOException("Unknown dictionary version " + Long.toHexString(fingerprint) + ".");
+                }
+            }
+            return decodeAll(dict, sentences, maxEdits);
+        }
+
+        private int index(Part part, String word, Events.SentenceAnalysis event) {
+            int v = dict.getIndex(part, word);
+            if (v < 0 && maxEdits > 0) {
+                String corrected = dict.correct(part, word, maxEdits);
+                if (corrected != null) {
+                    Metrics.CORRECTED_WORDS.increment();
+                    event.correctedWords++;
+                    v = dict.getIndex(part, corrected);
+                }
+            }
+            if (v < 0) {
+                Metrics.UNKNOWN_WORDS.increment();
+                event.unknownWords++;
+            }
+            return v;
+        }
     }
 
     public static class SentenceBuilder {
+        // Chunks per task of buildAll.
+        private static final int RANGE = 256;
+
         private List<Word> sequence = new ArrayList<>();
         private long value;
-        private Dictionary dict;
+        private ReadOnlyDictionary dict;
+        private RandomSource random;
 
-        public SentenceBuilder(Dictionary dict, long value) {
+        public SentenceBuilder(ReadOnlyDictionary dict, long value) {
+            this(dict, value, RandomSource.THREAD_LOCAL);
+        }
+
+        /**
+         * @param random picks among the forms and determiners allowed for each
+         *               word; a seeded source gives reproducible sentences.
+         */
+        public SentenceBuilder(ReadOnlyDictionary dict, long value, RandomSource random) {
             this.dict = dict;
             this.value = value;
+            this.random = random;
         }
 
         public SentenceBuilder addNoun() {
             int index = (int) (value % (dict.getNounAmount()));
-            sequence.add(dict.selectNoun(index));
             value /= (dict.getNounAmount());
 
+            return addNoun(index);
+        }
+
+        public SentenceBuilder addNoun(int index) {
+            sequence.add(dict.selectNoun(index, random));
             return this;
         }
 
         public SentenceBuilder addAdjective() {
             int index = (int) (value % (dict.getAdjectiveAmount()));
-            Noun lastNoun = getLastNoun();
-            sequence.add(dict.selectAdjective(lastNoun.amount, lastNoun.gender, index));
             value /= (dict.getAdjectiveAmount());
 
+            return addAdjective(index);
+        }
+
+        public SentenceBuilder addAdjective(int index) {
+            Noun lastNoun = getLastNoun();
+            sequence.add(dict.selectAdjective(lastNoun.amount, lastNoun.gender, index, random));
             return this;
         }
 
         public SentenceBuilder addVerb() {
             int index = (int) (value % (dict.getVerbAmount()));
-            Noun lastNoun = getLastNoun();
-            sequence.add(dict.selectVerb(lastNoun.amount, index));
             value /= (dict.getVerbAmount());
 
+            return addVerb(index);
+        }
+
+        public SentenceBuilder addVerb(int index) {
+            Noun lastNoun = getLastNoun();
+            sequence.add(dict.selectVerb(lastNoun.amount, index, random));
             return this;
         }
 
         public SentenceBuilder addAdverb() {
             int index = (int) (value % (dict.getAdverbAmount()));
-            sequence.add(dict.selectAdverb(index));
             value /= (dict.getAdverbAmount());
 
+            return addAdverb(index);
+        }
+
+        public SentenceBuilder addAdverb(int index) {
+            sequence.add(dict.selectAdverb(index, random));
+            return this;
+        }
+
+        public SentenceBuilder add(Part part) {
+            switch (part) {
+            case NOUN:
+                return addNoun();
+            case ADJECTIVE:
+                return addAdjective();
+            case VERB:
+                return addVerb();
+            default:
+                return addAdverb();
+            }
+        }
+
+        /**
+         * Adds a word for the given digit instead of taking it from the value.
+         */
+        public SentenceBuilder add(Part part, int index) {
+            switch (part) {
+            case NOUN:
+                return addNoun(index);
+            case ADJECTIVE:
+                return addAdjective(index);
+            case VERB:
+                return addVerb(index);
+            default:
+                return addAdverb(index);
+            }
+        }
+
+        public SentenceBuilder add(Part[] template) {
+            for (Part part : template) {
+                add(part);
+            }
             return this;
         }
 
@@ -137,67 +314,124 @@ public class ExquisiteCorpse {
             return this.value;
         }
 
+        /**
+         * Number, from 1, of the shortest of the dictionary's templates that can carry the
+         * remaining value.
+         */
         public int getMinimalForm() {
-            if (value < computePossibilities(2, 1, 1, 0))
-                return 1;
-            if (value < computePossibilities(2, 2, 1, 0))
-                return 2;
-            if (value < computePossibilities(2, 2, 1, 1))
-                ;
-            return 3;
+            return dict.getTemplates().select(value) + 1;
         }
 
-        private long computePossibilities(int nounAmount, int adjectiveAmount, int verbAmount, int adverbAmount) {
-            return (long) (Math.pow(dict.getNounAmount(), nounAmount)
-                    * Math.pow(dict.getAdjectiveAmount(), adjectiveAmount) * Math.pow(dict.getVerbAmount(), verbAmount)
-                    * Math.pow(dict.getAdverbAmount(), adverbAmount));
+        /**
+         * Sentences of every {@link Longifier} chunk of the bytes, in order. Ranges of chunks are
+         * built in parallel, each picking forms with its thread's random source.
+         */
+        public static List<String> buildAll(ReadOnlyDictionary dict, byte[] bytes, boolean annotated) {
+            return buildAll(dict, bytes, annotated, range -> RandomSource.THREAD_LOCAL);
+        }
+
+        /**
+         * Same as {@link #buildAll(ReadOnlyDictionary, byte[], boolean)}, but reproducible: every range has
+         * its own source derived from the seed, whichever thread builds it.
+         */
+        public static List<String> buildAll(ReadOnlyDictionary dict, byte[] bytes, boolean annotated, long seed) {
+            return buildAll(dict, bytes, annotated, range -> RandomSource.seeded(seed + range * 0x9E3779B97F4A7C15L));
+        }
+
+        private static List<String> buildAll(ReadOnlyDictionary dict, byte[] bytes, boolean annotated,
+                IntFunction<RandomSource> randoms) {
+            String[] sentences = new String[(bytes.length + 6) / 7];
+            int ranges = (sentences.length + RANGE - 1) / RANGE;
+            IntStream.range(0, ranges).parallel().forEach(range -> {
+                RandomSource random = randoms.apply(range);
+                int offset = 7 * RANGE * range;
+                Longifier chunks = new Longifier(
+                        ByteBuffer.wrap(bytes, offset, Math.min(7 * RANGE, bytes.length - offset)));
+                for (int i = RANGE * range; chunks.hasNext(); i++) {
+                    SentenceBuilder builder = new SentenceBuilder(dict, chunks.nextLong(), random);
+                    processsSenctence(builder);
+                    sentences[i] = annotated ? builder.buildAnnotated() : builder.build();
+                }
+            });
+            return Arrays.asList(sentences);
         }
 
         public String build() {
-            String output = "";
-            int i = 0;
+            try {
+                return buildTo(new StringBuilder(64)).toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        public String buildAnnotated() {
+            try {
+                return buildAnnotatedTo(new StringBuilder(64)).toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Appends the sentence, with determiners, a capital and a final period.
+         */
+        public <A extends Appendable> A buildTo(A out) throws IOException {
+            boolean first = true;
             for (Word word : sequence) {
-                if ((i != 0) && (i < (sequence.size()))) {
-                    output += " ";
+                if (!first) {
+                    out.append(' ');
                 }
                 if (word instanceof Noun) {
-                    output += dict.selectDetForNoun((Noun) word);
+                    appendCapitalized(out, dict.selectDetForNoun((Noun) word, random), first);
+                    first = false;
                 }
-                output += word.word;
-                i++;
+                appendCapitalized(out, word.word, first);
+                first = false;
             }
-
-            String upper = new StringBuffer().insert(0, output.charAt(0)).toString().toUpperCase();
-
-            return upper + output.substring(1) + ".";
+            out.append('.');
+            return out;
         }
-        
-        public String buildAnnotated() {
-            String output = "";
-            int i = 0;
+
+        /**
+         * Appends the {@code Nom:word ...} form read by {@link SentenceAnalyzer}.
+         */
+        public <A extends Appendable> A buildAnnotatedTo(A out) throws IOException {
+            boolean first = true;
             for (Word word : sequence) {
-                if ((i != 0) && (i < (sequence.size()))) {
-                    output += " ";
+                if (!first) {
+                    out.append(' ');
                 }
-
                 if (word instanceof Noun) {
-                    output += "Nom:";
+                    out.append("Nom:");
                 }
                 if (word instanceof Adjective) {
-                    output += "Adj:";
+                    out.append("Adj:");
                 }
                 if (word instanceof Verb) {
-                    output += "Ver:";
+                    out.append("Ver:");
                 }
                 if (word instanceof Adverb) {
-                    output += "Adv:";
+                    out.append("Adv:");
                 }
-                
-                output += word.word;
-                i++;
+                out.append(word.word);
+                first = false;
             }
+            return out;
+        }
 
-            return output;
+        private static void appendCapitalized(Appendable out, String text, boolean capitalize) throws IOException {
+            if (!capitalize || text.isEmpty()) {
+                out.append(text);
+                return;
+            }
+            int first = text.codePointAt(0);
+            int upper = Character.toUpperCase(first);
+            if (Character.isBmpCodePoint(upper)) {
+                out.append((char) upper);
+            } else {
+                out.append(Character.highSurrogate(upper)).append(Character.lowSurrogate(upper));
+            }
+            out.append(text, Character.charCount(first), text.length());
         }
     }
 
@@ -234,8 +468,8 @@ public class ExquisiteCorpse {
     }
 
     public static class Noun extends Word {
-        public String gender;
-        public String amount;
+        public Gender gender;
+        public Amount amount;
 
         @Override
         public String toString() {
@@ -245,10 +479,10 @@ public class ExquisiteCorpse {
 
     public static class Adjective extends Word {
 
-        public String gender;
-        public String amount;
+        public Gender gender;
+        public Amount amount;
 
-        public String type;
+        public Type type;
 
         @Override
         public String toString() {
@@ -257,13 +491,13 @@ public class ExquisiteCorpse {
     }
 
     public static class Verb extends Word {
-        public String tense;
+        public Tense tense;
 
-        public String amount;
-        public String person;
+        public Amount amount;
+        public Person person;
 
         // PPas only.
-        public String gender;
+        public Gender gender;
 
         @Override
         public String toString() {
@@ -280,261 +514,958 @@ public class ExquisiteCorpse {
 
     }
 
+    /**
+     * Loads dictionary shards. It only collects forms: {@link #freeze()} gives the read-only
+     * dictionary that encodes and decodes.
+     */
     public static class Dictionary {
 
-        private BiKeyMap<Integer, String, List<Noun>> nouns = new BiKeyMap<>();
-        private BiKeyMap<Integer, String, List<Adjective>> adjectives = new BiKeyMap<>();
-        private BiKeyMap<Integer, String, List<Verb>> verbs = new BiKeyMap<>();
-        private BiKeyMap<Integer, String, List<Adverb>> adverbs = new BiKeyMap<>();
+        /**
+         * How lemmas are mapped to radix digits.
+         */
+        public enum Radix {
+            /**
+             * One digit per group of 4 lemmas, 8 for verbs, served by the first lemma of the group
+             * that agrees. This is the historical layout.
+             */
+            GROUPED,
+            /**
+             * One digit per usable lemma: one that has forms for every agreement a sentence can ask
+             * for, none of them already used by an earlier lemma, so the form alone gives the digit
+             * back. Words carry several times more values, so sentences are shorter.
+             */
+            DENSE
+        }
+
+        private final Radix radix;
 
-        private int a = 0, b = 0, c = 0, d = 0;
+        private final Lexicon nouns = new Lexicon();
+        private final Lexicon adjectives = new Lexicon();
+        private final Lexicon verbs = new Lexicon();
+        private final Lexicon adverbs = new Lexicon();
+        private long fingerprint;
+
+        public Dictionary() {
+            this(Radix.GROUPED);
+        }
+
+        /**
+         * @param radix digit mapping of the dictionaries this one freezes into
+         */
+        public Dictionary(Radix radix) {
+            this.radix = radix;
+            fingerprint = fingerprint(radix);
+        }
+
+        /**
+         * Forms of one part of speech. Words and their packed morphology live in flat arrays, lemmas
+         * only keep the positions of their forms.
+         */
+        private static class Lexicon implements WordTable {
+            private IntBiKeyMap<IntList> lemmas = new IntBiKeyMap<>(1024);
+            // Surface form -> form identifier, and the lowest lemma of each, so decoding doesn't scan
+            // the lemma lists.
+            private Map<String, Integer> ids = new HashMap<>();
+            private IntList lowestLemmas = new IntList(1024);
+
+            private String[] words = new String[1024];
+            private int[] wordIds = new int[1024];
+            private int[] morphologies = new int[1024];
+            private int size;
+
+            private void add(String lemma, String word, int morphology) {
+                int key = lemmas.getKeyFromB(lemma);
+                if (key < 0) {
+                    key = lemmas.size();
+                    lemmas.put(key, lemma, new IntList());
+                }
+                Integer id = ids.get(word);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(word, id);
+                    lowestLemmas.add(key);
+                } else if (key < lowestLemmas.get(id)) {
+                    // A form shared by several lemmas resolves to the lowest lemma index.
+                    lowestLemmas.set(id, key);
+                }
+                if (size == words.length) {
+                    words = Arrays.copyOf(words, size * 2);
+                    wordIds = Arrays.copyOf(wordIds, size * 2);
+                    morphologies = Arrays.copyOf(morphologies, size * 2);
+                }
+                words[size] = word;
+                wordIds[size] = id;
+                morphologies[size] = morphology;
+                lemmas.getFromA(key).add(size);
+                size++;
+            }
+
+            @Override
+            public int lemmaCount() {
+                return lemmas.size();
+            }
+
+            @Override
+            public int formCount(int lemma) {
+                return lemmas.getFromA(lemma).size();
+            }
+
+            @Override
+            public String word(int lemma, int form) {
+                return words[lemmas.getFromA(lemma).get(form)];
+            }
+
+            @Override
+            public int morphology(int lemma, int form) {
+                return morphologies[lemmas.getFromA(lemma).get(form)];
+            }
+
+            @Override
+            public int findLemma(String word) {
+                int id = formId(word);
+                return id < 0 ? -1 : lowestLemmas.get(id);
+            }
+
+            @Override
+            public int formIds() {
+                return ids.size();
+            }
+
+            @Override
+            public int formId(String word) {
+                Integer id = ids.get(word);
+                return id == null ? -1 : id;
+            }
+
+            @Override
+            public int formId(int lemma, int form) {
+                return wordIds[lemmas.getFromA(lemma).get(form)];
+            }
+        }
+
+        /**
+         * Loads every TSV shard of a directory. Shards are parsed in parallel and merged in file name
+         * order, so lemma indices don't depend on the file system listing order.
+         */
+        public void loadAll(File directory) {
+            long start = Metrics.start();
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".tsv"));
+            if (files == null) {
+                throw new IllegalArgumentException(directory + " is not a directory.");
+            }
+            Arrays.sort(files, Comparator.comparing(File::getName));
+            List<Shard> shards = Arrays.stream(files).parallel().map(Dictionary::parse).collect(Collectors.toList());
+            shards.forEach(this::merge);
+            fingerprint = fingerprint(radix);
+            Metrics.DICTIONARY_LOAD.record(start);
+        }
 
         public void load(File dictionary) {
-            try {
-                Scanner sc = new Scanner(dictionary);
-                while (sc.hasNextLine()) {
-                    String line = sc.nextLine();
-                    String[] elements = line.split("[\t ]");
-                    String[] meta = elements[2].split(":");
-
-                    if (meta[0].equals("Adv")) {
-                        Adverb adverb = new Adverb();
-                        adverb.word = elements[0];
-                        if (adverbs.containsKeyB(elements[1])) {
-                            adverbs.getFromB(elements[1]).add(adverb);
-                        } else {
-                            List<Adverb> newList = new ArrayList<>();
-                            newList.add(adverb);
-                            adverbs.put(a, elements[1], newList);
-                            a++;
-                        }
+            long start = Metrics.start();
+            merge(parse(dictionary));
+            fingerprint = fingerprint(radix);
+            Metrics.DICTIONARY_LOAD.record(start);
+        }
+
+        /**
+         * Lines of a single file, in file order.
+         */
+        private static class Shard {
+            private Entries nouns = new Entries();
+            private Entries adjectives = new Entries();
+            private Entries verbs = new Entries();
+            private Entries adverbs = new Entries();
+        }
+
+        private static class Entries {
+            private String[] lemmas = new String[256];
+            private String[] words = new String[256];
+            private int[] morphologies = new int[256];
+            private int size;
+
+            private void add(String lemma, String word, int morphology) {
+                if (size == words.length) {
+                    lemmas = Arrays.copyOf(lemmas, size * 2);
+                    words = Arrays.copyOf(words, size * 2);
+                    morphologies = Arrays.copyOf(morphologies, size * 2);
+                }
+                lemmas[size] = lemma;
+                words[size] = word;
+                morphologies[size] = morphology;
+                size++;
+            }
+        }
+
+        private static Shard parse(File dictionary) {
+            long start = Metrics.start();
+            Events.ShardLoad event = new Events.ShardLoad();
+            event.begin();
+            Shard shard = new Shard();
+            try (FileChannel channel = FileChannel.open(dictionary.toPath(), StandardOpenOption.READ)) {
+                TsvTokenizer tsv = new TsvTokenizer(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+                int[] meta = new int[16];
+                int[] data = new int[8];
+                while (tsv.next()) {
+                    event.lines++;
+                    // Blank lines and the end of file banner.
+                    if (tsv.fields() < 3) {
+                        continue;
                     }
+                    int metaCount = tsv.split(tsv.start(2), tsv.end(2), (byte) ':', meta);
 
-                    if (meta[0].equals("Nom")) {
-                        String[] data = meta[1].split("\\+");
-                        Noun noun = new Noun();
-                        noun.word = elements[0];
-                        if (data.length == 2) {
-                            noun.gender = data[0];
-                            noun.amount = data[1];
-                        } else {
-                            noun.amount = data[0];
-                        }
-                        if (nouns.containsKeyB(elements[1])) {
-                            nouns.getFromB(elements[1]).add(noun);
-                        } else {
-                            List<Noun> newList = new ArrayList<>();
-                            newList.add(noun);
-                            nouns.put(b, elements[1], newList);
-                            b++;
-                        }
+                    if (tsv.equals(meta[0], meta[1], "Adv")) {
+                        shard.adverbs.add(tsv.symbol(tsv.start(1), tsv.end(1)), tsv.string(tsv.start(0), tsv.end(0)),
+                                0);
                     }
 
-                    if (meta[0].equals("Adj")) {
-                        String[] data = meta[1].split("\\+");
-                        Adjective adjective = new Adjective();
-                        adjective.word = elements[0];
-                        if (data.length == 2) {
-                            adjective.gender = data[0];
-                            adjective.amount = data[1];
+                    if (tsv.equals(meta[0], meta[1], "Nom") && metaCount > 1) {
+                        int dataCount = tsv.split(meta[2], meta[3], (byte) '+', data);
+                        int morphology;
+                        if (dataCount == 2) {
+                            morphology = Morphology.of(Gender.parse(tsv.symbol(data[0], data[1])))
+                                    | Morphology.of(Amount.parse(tsv.symbol(data[2], data[3])));
                         } else {
-                            adjective.type = data[0];
+                            morphology = Morphology.of(Amount.parse(tsv.symbol(data[0], data[1])));
                         }
-                        if (adjectives.containsKeyB(elements[1])) {
-                            adjectives.getFromB(elements[1]).add(adjective);
+                        shard.nouns.add(tsv.symbol(tsv.start(1), tsv.end(1)), tsv.string(tsv.start(0), tsv.end(0)),
+                                morphology);
+                    }
+
+                    if (tsv.equals(meta[0], meta[1], "Adj") && metaCount > 1) {
+                        int dataCount = tsv.split(meta[2], meta[3], (byte) '+', data);
+                        int morphology;
+                        if (dataCount == 2) {
+                            morphology = Morphology.of(Gender.parse(tsv.symbol(data[0], data[1])))
+                                    | Morphology.of(Amount.parse(tsv.symbol(data[2], data[3])));
                         } else {
-                            List<Adjective> newList = new ArrayList<>();
-                            newList.add(adjective);
-                            adjectives.put(c, elements[1], newList);
-                            c++;
+                            morphology = Morphology.of(Type.parse(tsv.symbol(data[0], data[1])));
                         }
+                        shard.adjectives.add(tsv.symbol(tsv.start(1), tsv.end(1)),
+                                tsv.string(tsv.start(0), tsv.end(0)), morphology);
                     }
 
-                    if (meta[0].equals("Ver")) {
-                        for (int i = 1; i < meta.length; i++) {
-                            String[] data = meta[i].split("\\+");
-                            Verb verb = new Verb();
-                            verb.word = elements[0];
-                            verb.tense = data[0];
-                            if (!(verb.tense.equals("PPas") || verb.tense.equals("PPre") || verb.tense.equals("Inf"))) {
-                                verb.amount = data[1];
-                                verb.person = data[2];
-                            } else if (verb.tense.equals("PPas") && data.length == 3) {
-                                verb.gender = data[1];
-                                verb.amount = data[2];
-                            }
-                            if (verbs.containsKeyB(elements[1])) {
-                                verbs.getFromB(elements[1]).add(verb);
-                            } else {
-                                List<Verb> newList = new ArrayList<>();
-                                newList.add(verb);
-                                verbs.put(d, elements[1], newList);
-                                d++;
+                    if (tsv.equals(meta[0], meta[1], "Ver")) {
+                        String lemma = tsv.symbol(tsv.start(1), tsv.end(1));
+                        String word = tsv.string(tsv.start(0), tsv.end(0));
+                        for (int i = 1; i < metaCount && 2 * i + 1 < meta.length; i++) {
+                            int dataCount = tsv.split(meta[2 * i], meta[2 * i + 1], (byte) '+', data);
+                            Tense tense = Tense.parse(tsv.symbol(data[0], data[1]));
+                            int morphology = Morphology.of(tense);
+                            if (tense == null || tense.isFinite()) {
+                                if (dataCount > 1)
+                                    morphology |= Morphology.of(Amount.parse(tsv.symbol(data[2], data[3])));
+                                if (dataCount > 2)
+                                    morphology |= Morphology.of(Person.parse(tsv.symbol(data[4], data[5])));
+                            } else if (tense == Tense.P_PAS && dataCount == 3) {
+                                morphology |= Morphology.of(Gender.parse(tsv.symbol(data[2], data[3])))
+                                        | Morphology.of(Amount.parse(tsv.symbol(data[4], data[5])));
                             }
+                            shard.verbs.add(lemma, word, morphology);
                         }
                     }
                 }
-                sc.close();
             } catch (Exception e) {
                 throw new RuntimeException("Exception during dictionary load", e);
             }
+            Metrics.SHARD_LOAD.record(start);
+            event.file = dictionary.getName();
+            event.forms = shard.nouns.size + shard.adjectives.size + shard.verbs.size + shard.adverbs.size;
+            event.commit();
+            return shard;
+        }
+
+        private void merge(Shard shard) {
+            merge(adverbs, shard.adverbs);
+            merge(nouns, shard.nouns);
+            merge(adjectives, shard.adjectives);
+            merge(verbs, shard.verbs);
+        }
+
+        private static void merge(Lexicon target, Entries source) {
+            for (int i = 0; i < source.size; i++) {
+                target.add(source.lemmas[i], source.words[i], source.morphologies[i]);
+            }
+        }
+
+        /**
+         * Read-only copy of the forms loaded so far, resolved for encoding and decoding. It can be
+         * shared between threads, and later loads don't change it. See {@link FrozenDictionary}.
+         */
+        public FrozenDictionary freeze() {
+            return new FrozenDictionary(this);
+        }
+
+        public Radix getRadix() {
+            return radix;
+        }
+
+        /**
+         * Fingerprint of the dictionaries this one freezes into, as of the last load. See
+         * {@link ReadOnlyDictionary#fingerprint()}.
+         */
+        public long fingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Fingerprint of the forms loaded so far with the given radix mode. Computed once per load,
+         * as it hashes every form.
+         */
+        long fingerprint(Radix radix) {
+            return ReadOnlyDictionary.fingerprint(radix, adverbs, nouns, adjectives, verbs);
+        }
+
+        WordTable getNounTable() {
+            return nouns;
+        }
+
+        WordTable getAdjectiveTable() {
+            return adjectives;
+        }
+
+        WordTable getVerbTable() {
+            return verbs;
+        }
+
+        WordTable getAdverbTable() {
+            return adverbs;
+        }
+    }
+
+    /**
+     * Dictionary that encodes and decodes: the forms of each part of speech, the agreeing forms of
+     * every radix digit and the sentence templates. Everything is resolved by the constructor and
+     * held in final fields, so any number of threads can use it. Made by {@link Dictionary#freeze()}.
+     */
+    public static abstract class ReadOnlyDictionary {
+
+        private static final int NOUN_FILTER = Morphology.of(Gender.MAS) | Morphology.of(Gender.FEM)
+                | Morphology.of(Amount.SG) | Morphology.of(Amount.PL);
+        private static final int VERB_FILTER = Morphology.finiteTenses() | Morphology.of(Person.P3);
+
+        private final Radix radix;
+        private final WordTable adverbs, nouns, adjectives, verbs;
+        private final Candidates nounCandidates, adjectiveCandidates, verbCandidates, adverbCandidates;
+        private final SentenceTemplates templates;
+        private final long fingerprint;
+
+        /**
+         * Resolves the agreeing forms of every digit. The tables must not change afterwards.
+         *
+         * @param fingerprint fingerprint of the tables with this radix mode, computed when they were
+         *            loaded or written, see {@link #fingerprint()}
+         */
+        protected ReadOnlyDictionary(Radix radix, long fingerprint, WordTable adverbs, WordTable nouns,
+                WordTable adjectives, WordTable verbs) {
+            this.radix = radix;
+            this.fingerprint = fingerprint;
+            this.adverbs = adverbs;
+            this.nouns = nouns;
+            this.adjectives = adjectives;
+            this.verbs = verbs;
+            nounCandidates = nounCandidates(nouns, radix);
+            adjectiveCandidates = adjectiveCandidates(adjectives, radix);
+            verbCandidates = verbCandidates(verbs, radix);
+            adverbCandidates = adverbCandidates(adverbs, radix);
+            templates = new SentenceTemplates(this, SentenceTemplates.DEFAULT);
+        }
+
+        /**
+         * Agreeing forms resolved for every radix digit and agreement class: the lemma of the digit's
+         * group that has agreeing forms, and their positions. Only forms that decode back to the
+         * digit are kept. A group without any falls back to its first form that decodes, or to the
+         * first form of its first lemma.
+         */
+        static class Candidates {
+            private final WordTable table;
+            private final int groupSize;
+            private final int classes;
+            private final int[] firsts;
+            private final int[] lemmas;
+            private final int[] starts;
+            private final int[] forms;
+            private final boolean[] fallbacks;
+            // Whether digit(String) uses the lemma index rather than formDigits.
+            private final boolean byLemma;
+            // Form identifier -> digit, for the forms kept, or -1.
+            private final int[] formDigits;
+
+            /**
+             * @param firsts   first lemma of the group of each digit
+             * @param required classes whose forms are looked up by {@link #digit(String)}, or 0 to
+             *                 decode with the lemma index instead
+             */
+            private Candidates(WordTable table, int[] firsts, int groupSize, int[] filters, int required) {
+                this.table = table;
+                this.groupSize = groupSize;
+                this.firsts = firsts;
+                int digits = firsts.length;
+                classes = filters.length;
+                lemmas = new int[digits * classes];
+                starts = new int[digits * classes + 1];
+                fallbacks = new boolean[digits * classes];
+                IntList found = new IntList(digits * classes);
+                for (int digit = 0; digit < digits; digit++) {
+                    for (int k = 0; k < classes; k++) {
+                        int chosen = -1;
+                        for (int lemma = firsts[digit]; lemma < firsts[digit] + groupSize && chosen < 0; lemma++) {
+                            for (int form = 0; form < table.formCount(lemma); form++) {
+                                if (Morphology.matches(table.morphology(lemma, form), filters[k])
+                                        && (required != 0 || decodesTo(table, lemma, form, groupSize, digit))) {
+                                    found.add(form);
+                                    chosen = lemma;
+                                }
+                            }
+                        }
+                        if (chosen < 0) {
+                            chosen = firsts[digit];
+                            int kept = -1;
+                            for (int lemma = firsts[digit]; lemma < firsts[digit] + groupSize && kept < 0; lemma++) {
+                                for (int form = 0; form < table.formCount(lemma) && kept < 0; form++) {
+                                    if (required == 0 && decodesTo(table, lemma, form, groupSize, digit)) {
+                                        chosen = lemma;
+                                        kept = form;
+                                    }
+                                }
+                            }
+                            found.add(Math.max(kept, 0));
+                            fallbacks[digit * classes + k] = true;
+                        }
+                        lemmas[digit * classes + k] = chosen;
+                        starts[digit * classes + k + 1] = found.size();
+                    }
+                }
+                forms = found.toArray();
+
+                byLemma = required == 0;
+                formDigits = new int[table.formIds()];
+                Arrays.fill(formDigits, -1);
+                for (int digit = 0; digit < digits; digit++) {
+                    for (int k = 0; k < classes; k++) {
+                        if (!byLemma && (required & 1 << k) == 0) {
+                            continue;
+                        }
+                        for (int n = 0; n < count(digit, k); n++) {
+                            if (!byLemma || decodesTo(table, lemma(digit, k), form(digit, k, n), groupSize, digit)) {
+                                formDigits[table.formId(lemma(digit, k), form(digit, k, n))] = digit;
+                            }
+                        }
+                    }
+                }
+            }
+
+            /**
+             * Whether a form gives back the digit of its group. A form shared with a lemma of an
+             * earlier group gives back that group.
+             */
+            private static boolean decodesTo(WordTable table, int lemma, int form, int groupSize, int digit) {
+                return table.findLemma(table.word(lemma, form)) / groupSize == digit;
+            }
+
+            static Candidates grouped(WordTable table, int groupSize, int[] filters) {
+                int[] firsts = new int[table.lemmaCount() / groupSize];
+                for (int digit = 0; digit < firsts.length; digit++) {
+                    firsts[digit] = digit * groupSize;
+                }
+                return new Candidates(table, firsts, groupSize, filters, 0);
+            }
+
+            /**
+             * One digit per lemma having forms for every required class, none of them shared with
+             * an earlier lemma.
+             */
+            static Candidates dense(WordTable table, int[] filters, int required) {
+                IntList usable = new IntList(table.lemmaCount());
+                BitSet claimed = new BitSet(table.formIds());
+                for (int lemma = 0; lemma < table.lemmaCount(); lemma++) {
+                    IntList ids = new IntList();
+                    if (!agreeingForms(table, lemma, filters, required, ids)) {
+                        continue;
+                    }
+                    boolean free = true;
+                    for (int i = 0; i < ids.size() && free; i++) {
+                        free = !claimed.get(ids.get(i));
+                    }
+                    if (free) {
+                        usable.add(lemma);
+                        for (int i = 0; i < ids.size(); i++) {
+                            claimed.set(ids.get(i));
+                        }
+                    }
+                }
+                return new Candidates(table, usable.toArray(), 1, filters, required);
+            }
+
+            private static boolean agreeingForms(WordTable table, int lemma, int[] filters, int required,
+                    IntList ids) {
+                for (int k = 0; k < filters.length; k++) {
+                    if ((required & 1 << k) == 0) {
+                        continue;
+                    }
+                    boolean found = false;
+                    for (int form = 0; form < table.formCount(lemma); form++) {
+                        if (Morphology.matches(table.morphology(lemma, form), filters[k])) {
+                            ids.add(table.formId(lemma, form));
+                            found = true;
+                        }
+                    }
+                    if (!found) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            private int digits() {
+                return firsts.length;
+            }
+
+            /**
+             * Digit of a surface form, or -1.
+             */
+            private int digit(String word) {
+                if (byLemma) {
+                    int lemma = table.findLemma(word);
+                    return lemma < 0 ? -1 : lemma / groupSize;
+                }
+                int id = table.formId(word);
+                return id < 0 ? -1 : formDigits[id];
+            }
+
+            /**
+             * Whether a form, by identifier, is one of the kept forms, which give back their digit.
+             */
+            private boolean decodes(int formId) {
+                return formDigits[formId] >= 0;
+            }
+
+            private int first(int digit) {
+                return firsts[digit];
+            }
+
+            private int lemma(int digit, int k) {
+                return lemmas[digit * classes + k];
+            }
+
+            private int count(int digit, int k) {
+                return starts[digit * classes + k + 1] - starts[digit * classes + k];
+            }
+
+            private int form(int digit, int k, int n) {
+                return forms[starts[digit * classes + k] + n];
+            }
+
+            private boolean fallback(int digit, int k) {
+                return fallbacks[digit * classes + k];
+            }
+        }
+
+        private static Candidates nounCandidates(WordTable nouns, Radix radix) {
+            int[] filters = { NOUN_FILTER };
+            if (radix == Radix.GROUPED) {
+                return Candidates.grouped(nouns, 4, filters);
+            }
+            return Candidates.dense(nouns, filters, 1);
+        }
+
+        private static Candidates adjectiveCandidates(WordTable adjectives, Radix radix) {
+            int[] filters = new int[Amount.values().length * Gender.values().length];
+            for (Amount amount : Amount.values()) {
+                for (Gender gender : Gender.values()) {
+                    filters[adjectiveClass(amount, gender)] = Morphology.of(amount) | Morphology.of(gender);
+                }
+            }
+            if (radix == Radix.GROUPED) {
+                return Candidates.grouped(adjectives, 4, filters);
+            }
+            // Selected nouns always have one of these agreements.
+            int required = 0;
+            for (Amount amount : new Amount[] { Amount.SG, Amount.PL }) {
+                for (Gender gender : new Gender[] { Gender.MAS, Gender.FEM }) {
+                    required |= 1 << adjectiveClass(amount, gender);
+                }
+            }
+            return Candidates.dense(adjectives, filters, required);
+        }
+
+        private static Candidates verbCandidates(WordTable verbs, Radix radix) {
+            int[] filters = new int[Amount.values().length];
+            for (Amount amount : Amount.values()) {
+                filters[amount.ordinal()] = VERB_FILTER | Morphology.of(amount);
+            }
+            if (radix == Radix.GROUPED) {
+                return Candidates.grouped(verbs, 8, filters);
+            }
+            return Candidates.dense(verbs, filters, 1 << Amount.SG.ordinal() | 1 << Amount.PL.ordinal());
+        }
+
+        private static Candidates adverbCandidates(WordTable adverbs, Radix radix) {
+            int[] filters = { 0 };
+            if (radix == Radix.GROUPED) {
+                return Candidates.grouped(adverbs, 1, filters);
+            }
+            return Candidates.dense(adverbs, filters, 1);
+        }
+
+        /**
+         * Hash of every form, its morphology and lemma index, and of the radix mode. Dictionaries
+         * with the same fingerprint encode and decode the same way.
+         */
+        public long fingerprint() {
+            return fingerprint;
+        }
+
+        static long fingerprint(Radix radix, WordTable... tables) {
+            long hash = 0xCBF29CE484222325L;
+            if (radix != Radix.GROUPED) {
+                hash = fnv(hash, radix.ordinal());
+            }
+            for (WordTable table : tables) {
+                hash = fnv(hash, table.lemmaCount());
+                for (int lemma = 0; lemma < table.lemmaCount(); lemma++) {
+                    hash = fnv(hash, table.formCount(lemma));
+                    for (int form = 0; form < table.formCount(lemma); form++) {
+                        String word = table.word(lemma, form);
+                        hash = fnv(hash, word.length());
+                        for (int i = 0; i < word.length(); i++) {
+                            hash = fnv(hash, word.charAt(i));
+                        }
+                        hash = fnv(hash, table.morphology(lemma, form));
+                    }
+                }
+            }
+            return hash;
+        }
+
+        private static long fnv(long hash, int value) {
+            return (hash ^ value) * 0x100000001B3L;
+        }
+
+        private static int adjectiveClass(Amount amount, Gender gender) {
+            return amount.ordinal() * Gender.values().length + gender.ordinal();
+        }
 
+        public Radix getRadix() {
+            return radix;
+        }
+
+        final WordTable getNounTable() {
+            return nouns;
+        }
+
+        final WordTable getAdjectiveTable() {
+            return adjectives;
+        }
+
+        final WordTable getVerbTable() {
+            return verbs;
+        }
+
+        final WordTable getAdverbTable() {
+            return adverbs;
+        }
+
+        private Candidates getNounCandidates() {
+            return nounCandidates;
+        }
+
+        private Candidates getAdjectiveCandidates() {
+            return adjectiveCandidates;
+        }
+
+        private Candidates getVerbCandidates() {
+            return verbCandidates;
+        }
+
+        private Candidates getAdverbCandidates() {
+            return adverbCandidates;
+        }
+
+        /**
+         * The default templates, with their capacities for this dictionary.
+         */
+        public SentenceTemplates getTemplates() {
+            return templates;
         }
 
         public int getNounAmount() {
-            return nouns.size() / 4;
+            return getNounCandidates().digits();
         }
 
         public int getAdjectiveAmount() {
-            return adjectives.size() / 4;
+            return getAdjectiveCandidates().digits();
         }
 
         public int getVerbAmount() {
-            return verbs.size() / 8;
+            return getVerbCandidates().digits();
         }
 
         public int getAdverbAmount() {
-            return adverbs.size();
+            return getAdverbCandidates().digits();
+        }
+
+        /**
+         * Radix of a part of speech: the number of values one of its words carries.
+         */
+        public int getAmount(Part part) {
+            switch (part) {
+            case NOUN:
+                return getNounAmount();
+            case ADJECTIVE:
+                return getAdjectiveAmount();
+            case VERB:
+                return getVerbAmount();
+            default:
+                return getAdverbAmount();
+            }
+        }
+
+        /**
+         * Digit carried by a word of a part of speech, or -1.
+         */
+        public int getIndex(Part part, String word) {
+            switch (part) {
+            case NOUN:
+                return getIndexForNoun(word);
+            case ADJECTIVE:
+                return getIndexForAdjective(word);
+            case VERB:
+                return getIndexForVerb(word);
+            default:
+                return getIndexForAdverb(word);
+            }
+        }
+
+        /**
+         * Closest word to a misspelt one among those of the part of speech that decode, at most
+         * maxEdits edits away, or null. A letter missing its accent or in another case counts half
+         * an edit.
+         */
+        public String correct(Part part, String word, int maxEdits) {
+            WordTable table;
+            Candidates candidates;
+            switch (part) {
+            case NOUN:
+                table = getNounTable();
+                candidates = getNounCandidates();
+                break;
+            case ADJECTIVE:
+                table = getAdjectiveTable();
+                candidates = getAdjectiveCandidates();
+                break;
+            case VERB:
+                table = getVerbTable();
+                candidates = getVerbCandidates();
+                break;
+            default:
+                table = getAdverbTable();
+                candidates = getAdverbCandidates();
+                break;
+            }
+            return table.nearest(word, maxEdits * EditDistance.EDIT, candidates::decodes);
         }
 
         public int getIndexForNoun(String noun) {
-            List<List<Noun>> values = new ArrayList<>(nouns.values());
-            List<Noun> matching = values.stream().filter(v -> v.stream().anyMatch(v1 -> v1.word.equals(noun))).findAny()
-                    .orElse(null);
-            if (matching == null)
-                return -1;
-            List<Integer> indexes = new ArrayList<>(nouns.keysA());
-            int index = indexes.stream().filter(i -> nouns.getFromA(i).equals(matching)).findAny().get();
-            return index / 4;
+            return getNounCandidates().digit(noun);
         }
 
         public int getIndexForAdjective(String adjective) {
-            List<List<Adjective>> values = new ArrayList<>(adjectives.values());
-            List<Adjective> matching = values.stream().filter(v -> v.stream().anyMatch(v1 -> v1.word.equals(adjective)))
-                    .findAny().orElse(null);
-            if (matching == null)
-                return -1;
-            List<Integer> indexes = new ArrayList<>(adjectives.keysA());
-            int index = indexes.stream().filter(i -> adjectives.getFromA(i).equals(matching)).findAny().get();
-            return index / 4;
+            return getAdjectiveCandidates().digit(adjective);
         }
 
         public int getIndexForVerb(String verb) {
-            List<List<Verb>> values = new ArrayList<>(verbs.values());
-            List<Verb> matching = values.stream().filter(v -> v.stream().anyMatch(v1 -> v1.word.equals(verb))).findAny()
-                    .orElse(null);
-            if (matching == null)
-                return -1;
-            List<Integer> indexes = new ArrayList<>(verbs.keysA());
-            int index = indexes.stream().filter(i -> verbs.getFromA(i).equals(matching)).findAny().get();
-            return index / 8;
+            return getVerbCandidates().digit(verb);
         }
 
         public int getIndexForAdverb(String adverb) {
-            List<List<Adverb>> values = new ArrayList<>(adverbs.values());
-            List<Adverb> matching = values.stream().filter(v -> v.stream().anyMatch(v1 -> v1.word.equals(adverb)))
-                    .findAny().orElse(null);
-            if (matching == null)
-                return -1;
-            List<Integer> indexes = new ArrayList<>(adverbs.keysA());
-            int index = indexes.stream().filter(i -> adverbs.getFromA(i).equals(matching)).findAny().get();
-            return index;
+            return getAdverbCandidates().digit(adverb);
         }
 
         public String selectDetForNoun(Noun noun) {
-            Random rand = new Random();
+            return selectDetForNoun(noun, RandomSource.THREAD_LOCAL);
+        }
+
+        public String selectDetForNoun(Noun noun, RandomSource rand) {
             String subjectDet = "";
             boolean random = rand.nextBoolean();
             boolean startsWithVowel = startsWithVowel(noun);
-            if (noun.amount.equals("PL"))
+            if (noun.amount == Amount.PL)
                 subjectDet = random ? "les " : "des ";
-            else if (noun.gender.equals("Fem"))
+            else if (noun.gender == Gender.FEM)
                 subjectDet = startsWithVowel ? (random ? "l'" : "une ") : (random ? "la " : "une ");
             else
                 subjectDet = startsWithVowel ? (random ? "l'" : "un ") : (random ? "le " : "un ");
             return subjectDet;
         }
 
+        /**
+         * Whether {@link #selectDetForNoun(Noun, RandomSource)} may put the determiner, as written
+         * without its space, before this noun form: the gender and number of one of its forms
+         * must take it. Those are the forms of the first lemma spelled this way, and of the lemma
+         * {@link #selectNoun(int)} uses for the noun's digit. For an unknown noun, only the elision
+         * is checked.
+         */
+        public boolean isDetForNoun(String det, String noun) {
+            boolean startsWithVowel = startsWithVowel(noun);
+            WordTable table = getNounTable();
+            int lemma = table.findLemma(noun);
+            if (lemma < 0) {
+                return isDetFor(det, startsWithVowel, Gender.MAS, Amount.SG)
+                        || isDetFor(det, startsWithVowel, Gender.FEM, Amount.SG)
+                        || isDetFor(det, startsWithVowel, Gender.MAS, Amount.PL);
+            }
+            if (isDetFor(det, startsWithVowel, table, lemma, noun)) {
+                return true;
+            }
+            int digit = getIndexForNoun(noun);
+            int selected = digit < 0 ? lemma : getNounCandidates().lemma(digit, 0);
+            return selected != lemma && isDetFor(det, startsWithVowel, table, selected, noun);
+        }
+
+        private static boolean isDetFor(String det, boolean startsWithVowel, WordTable table, int lemma,
+                String noun) {
+            for (int form = 0; form < table.formCount(lemma); form++) {
+                int morphology = table.morphology(lemma, form);
+                if (table.word(lemma, form).equals(noun) && isDetFor(det, startsWithVowel,
+                        Morphology.gender(morphology), Morphology.amount(morphology))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Same rules as selectDetForNoun.
+        private static boolean isDetFor(String det, boolean startsWithVowel, Gender gender, Amount amount) {
+            if (amount == Amount.PL)
+                return det.equals("les") || det.equals("des");
+            else if (gender == Gender.FEM)
+                return det.equals("une") || det.equals(startsWithVowel ? "l'" : "la");
+            else
+                return det.equals("un") || det.equals(startsWithVowel ? "l'" : "le");
+        }
+
         public boolean startsWithVowel(Noun noun) {
+            return startsWithVowel(noun.word);
+        }
+
+        public boolean startsWithVowel(String word) {
             String[] vowels = { "a", "e", "i", "o", "u", "y", "h" };
 
             for (String vowel : vowels) {
-                if (noun.word.startsWith(vowel))
+                if (word.startsWith(vowel))
                     return true;
             }
             return false;
         }
 
         public Noun selectNoun(int in) {
-            Random rand = new Random();
-            List<Noun> selected;
-            int index = 4 * in;
-            do {
-                List<Noun> found = nouns.getFromA(index);
-                selected = found.stream().filter(n -> (n.gender.equals("Mas") || n.gender.equals("Fem"))
-                        && (n.amount.equals("SG") || n.amount.equals("PL"))).collect(Collectors.toList());
-                index++;
-                if (index - in > 3) {
-                    return found.get(0);
-                }
-            } while (selected.size() == 0);
-            int index2 = (int) (rand.nextDouble() * selected.size());
-            return selected.get(index2);
+            return selectNoun(in, RandomSource.THREAD_LOCAL);
         }
 
-        public Verb selectVerb(String amount, int in) {
-            Random rand = new Random();
-            List<Verb> selected;
-            int index = 8 * in;
-            do {
-                List<Verb> found = verbs.getFromA(index);
-                selected = found.stream()
-                        .filter(v -> !(v.tense.equals("PPre") || v.tense.equals("PPas") || v.tense.equals("Inf"))
-                                && v.amount.equals(amount) && v.person.equals("P3"))
-                        .collect(Collectors.toList());
-                index++;
-                if (index - 8 * in > 7) {
-                    return found.get(0);
-                }
-            } while (selected.size() == 0);
-            int index2 = (int) (rand.nextDouble() * selected.size());
-            return selected.get(index2);
+        public Noun selectNoun(int in, RandomSource rand) {
+            Candidates candidates = getNounCandidates();
+            if (Metrics.ENABLED && candidates.fallback(in, 0)) {
+                Metrics.NOUN_FALLBACK.increment();
+            }
+            int index2 = rand.nextInt(candidates.count(in, 0));
+            return noun(getNounTable(), candidates.lemma(in, 0), candidates.form(in, 0, index2));
         }
 
-        public Adjective selectAdjective(String amount, String gender, int in) {
-            Random rand = new Random();
-            List<Adjective> selected;
-            int index = 4 * in;
-            do {
-                List<Adjective> found = adjectives.getFromA(index);
-                index++;
-                selected = found.stream().filter(a -> (a.type == null) && a.amount.equals(amount)
-                        && (a.gender == null ? false : a.gender.equals(gender))).collect(Collectors.toList());
-                if (index - in > 3) {
-                    return found.get(0);
-                }
-            } while (selected.size() == 0);
+        public Verb selectVerb(Amount amount, int in) {
+            return selectVerb(amount, in, RandomSource.THREAD_LOCAL);
+        }
+
+        public Verb selectVerb(Amount amount, int in, RandomSource rand) {
+            Candidates candidates = getVerbCandidates();
+            if (amount == null) {
+                Metrics.VERB_FALLBACK.increment();
+                return verb(getVerbTable(), candidates.first(in), 0);
+            }
+            int k = amount.ordinal();
+            if (Metrics.ENABLED && candidates.fallback(in, k)) {
+                Metrics.VERB_FALLBACK.increment();
+            }
+            int index2 = rand.nextInt(candidates.count(in, k));
+            return verb(getVerbTable(), candidates.lemma(in, k), candidates.form(in, k, index2));
+        }
 
-            int index2 = (int) (rand.nextDouble() * selected.size());
-            return selected.get(index2);
+        public Adjective selectAdjective(Amount amount, Gender gender, int in) {
+            return selectAdjective(amount, gender, in, RandomSource.THREAD_LOCAL);
+        }
+
+        public Adjective selectAdjective(Amount amount, Gender gender, int in, RandomSource rand) {
+            Candidates candidates = getAdjectiveCandidates();
+            if (amount == null || gender == null) {
+                Metrics.ADJECTIVE_FALLBACK.increment();
+                return adjective(getAdjectiveTable(), candidates.first(in), 0);
+            }
+            int k = adjectiveClass(amount, gender);
+            if (Metrics.ENABLED && candidates.fallback(in, k)) {
+                Metrics.ADJECTIVE_FALLBACK.increment();
+            }
+            int index2 = rand.nextInt(candidates.count(in, k));
+            return adjective(getAdjectiveTable(), candidates.lemma(in, k), candidates.form(in, k, index2));
         }
 
         public Adverb selectAdverb(int index) {
-            Random rand = new Random();
-            List<Adverb> selected = adverbs.getFromA(index);
+            return selectAdverb(index, RandomSource.THREAD_LOCAL);
+        }
+
+        public Adverb selectAdverb(int index, RandomSource rand) {
+            Candidates candidates = getAdverbCandidates();
+            int index2 = rand.nextInt(candidates.count(index, 0));
+            Adverb adverb = new Adverb();
+            adverb.word = getAdverbTable().word(candidates.lemma(index, 0), candidates.form(index, 0, index2));
+            return adverb;
+        }
+
+        private static Noun noun(WordTable table, int lemma, int form) {
+            int morphology = table.morphology(lemma, form);
+            Noun noun = new Noun();
+            noun.word = table.word(lemma, form);
+            noun.gender = Morphology.gender(morphology);
+            noun.amount = Morphology.amount(morphology);
+            return noun;
+        }
 
-            int index2 = (int) (rand.nextDouble() * selected.size());
-            return selected.get(index2);
+        private static Adjective adjective(WordTable table, int lemma, int form) {
+            int morphology = table.morphology(lemma, form);
+            Adjective adjective = new Adjective();
+            adjective.word = table.word(lemma, form);
+            adjective.gender = Morphology.gender(morphology);
+            adjective.amount = Morphology.amount(morphology);
+            adjective.type = Morphology.type(morphology);
+            return adjective;
+        }
+
+        private static Verb verb(WordTable table, int lemma, int form) {
+            int morphology = table.morphology(lemma, form);
+            Verb verb = new Verb();
+            verb.word = table.word(lemma, form);
+            verb.tense = Morphology.tense(morphology);
+            verb.amount = Morphology.amount(morphology);
+            verb.person = Morphology.person(morphology);
+            verb.gender = Morphology.gender(morphology);
+            return verb;
         }
     }
 
     public static void main(String[] args) {
-        Dictionary dict = new Dictionary();
         try {
-            File dir = new File("dict");
-            for (String filename : dir.list()) {
-                dict.load(new File(dir, filename));
-                System.out.printf("Loading %s...\n", filename);
+            Metrics.install();
+
+            ReadOnlyDictionary dict;
+            // Null when serving an image, which doesn't change.
+            DictionaryReloader dictionaries = null;
+            File image = new File("dict.img");
+            if (image.isFile()) {
+                System.out.printf("Loading %s...\n", image.getName());
+                dict = DictionaryImage.map(image);
+            } else {
+                System.out.println("Loading dict...");
+                dictionaries = new DictionaryReloader(new File("dict"));
+                dictionaries.watch(10, TimeUnit.SECONDS);
+                dict = dictionaries.current();
             }
 
             DH dh = new DH();
@@ -542,23 +1473,16 @@ public class ExquisiteCorpse {
             byte[] enc = dh.generatePublicKey().getEncoded();
             
             System.out.println("Say this to your friend:");
-            
-            Longifier longifier = new Longifier(enc);
-            int i = 1;
-            while (longifier.hasNext()) {
-                long randLong = longifier.nextLong();
-                SentenceBuilder builder = new SentenceBuilder(dict, randLong);
-                processsSenctence(builder);
-                //System.out.printf("Sentence %d: %s\n", i, builder.build());
-                System.out.printf("%s\n", builder.buildAnnotated());
-                i++;
+            System.out.println(SentenceOutputStream.header(dict));
+            for (String sentence : SentenceBuilder.buildAll(dict, enc, true)) {
+                System.out.printf("%s\n", sentence);
             }
 
             System.out.println("Write what your friend said (ends with an empty line):");
-            System.out.println("You must write in the form [<type>:<word> <type>:<word> <type>:<word> ...].");
+            System.out.println("Paste the sentences as they are, or write [<type>:<word> <type>:<word> ...].");
             System.out.println("Valid types are \"Nom\", \"Adj\", \"Ver\" and \"Adv\".");
             Scanner sc = new Scanner(System.in);
-            Delongifier delongifier = new Delongifier();
+            List<String> said = new ArrayList<>();
             
             boolean shouldContinue = true;
             do {
@@ -567,12 +1491,11 @@ public class ExquisiteCorpse {
                 if (input.isEmpty()) {
                     shouldContinue = false;
                 } else {
-                    SentenceAnalyzer anal = new SentenceAnalyzer(dict, input.split(" "));
-                    long found = anal.findLong();
-                    delongifier.pushLong(found);
+                    said.add(input);
                 }
             } while (shouldContinue);
-            byte[] bytes = delongifier.toByteArray();
+            byte[] bytes = dictionaries != null ? SentenceAnalyzer.decodeAll(dictionaries, said, 2)
+                    : SentenceAnalyzer.decodeAll(dict, said, 2);
             KeyFactory fact = KeyFactory.getInstance("EC");
             PublicKey prekey = fact.generatePublic(new X509EncodedKeySpec(bytes));
             SecretKey key = dh.computeSharedKey(prekey);
@@ -599,23 +1522,23 @@ public class ExquisiteCorpse {
                         }
                     } while (shouldContinue2);
                     byte[] newEncoded = aes.encode(text.getBytes());
+                    if (dictionaries != null) {
+                        dict = dictionaries.current();
+                    }
                     System.out.println("Say this to your friend:");
-                    longifier = new Longifier(newEncoded);
+                    System.out.println(SentenceOutputStream.header(dict));
                     int j = 1;
-                    while (longifier.hasNext()) {
-                        long randLong = longifier.nextLong();
-                        SentenceBuilder builder = new SentenceBuilder(dict, randLong);
-                        processsSenctence(builder);
-                        System.out.printf("Sentence %d: %s\n", j, builder.build());
+                    for (String sentence : SentenceBuilder.buildAll(dict, newEncoded, false)) {
+                        System.out.printf("Sentence %d: %s\n", j, sentence);
                         j++;
                     }
                     break;
                 case 2:
                     System.out.println("Write what your friend said (ends with an empty line):");
-                    System.out.println("You must write in the form [<type>:<word> <type>:<word> <type>:<word> ...].");
+                    System.out.println("Paste the sentences as they are, or write [<type>:<word> <type>:<word> ...].");
                     System.out.println("Valid types are \"Nom\", \"Adj\", \"Ver\" and \"Adv\".");
                     
-                    Delongifier delongifier2 = new Delongifier();
+                    List<String> said2 = new ArrayList<>();
                     shouldContinue2 = true;
                     do {
                         System.out.print("> ");
@@ -623,12 +1546,11 @@ public class ExquisiteCorpse {
                         if (input.isEmpty()) {
                             shouldContinue2 = false;
                         } else {
-                            SentenceAnalyzer anal = new SentenceAnalyzer(dict, input.split(" "));
-                            long found = anal.findLong();
-                            delongifier2.pushLong(found);
+                            said2.add(input);
                         }
                     } while (shouldContinue2);
-                    byte[] bytes2 = delongifier2.toByteArray();
+                    byte[] bytes2 = dictionaries != null ? SentenceAnalyzer.decodeAll(dictionaries, said2, 2)
+                            : SentenceAnalyzer.decodeAll(dict, said2, 2);
                     String result = new String(aes.decode(bytes2));
 
                     System.out.printf("Result: %s\n", result);
@@ -644,19 +1566,22 @@ public class ExquisiteCorpse {
 
     }
     
-    private static void processsSenctence(SentenceBuilder builder) {
-        int formQualifier = builder.getMinimalForm();
-
-        switch (formQualifier) {
-        case 1:
-            builder.addNoun().addVerb().addNoun().addAdjective();
-            break;
-        case 2:
-            builder.addNoun().addAdjective().addVerb().addNoun().addAdjective();
-            break;
-        case 3:
-            builder.addNoun().addAdjective().addVerb().addAdverb().addNoun().addAdjective();
-            break;
-        }
+    static void processsSenctence(SentenceBuilder builder) {
+        processsSenctence(builder, builder.dict.getTemplates());
+    }
+
+    /**
+     * Builds the shortest sentence of the table that carries the builder's value.
+     */
+    static void processsSenctence(SentenceBuilder builder, SentenceTemplates templates) {
+        long start = Metrics.start();
+        Events.SentenceBuild event = new Events.SentenceBuild();
+        event.begin();
+        int form = templates.select(builder.getRemaining());
+        builder.add(templates.parts(form));
+        Metrics.SENTENCE_GENERATE.record(start);
+        event.form = form + 1;
+        event.words = builder.sequence.size();
+        event.commit();
     }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.Dictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.util.WordAutomaton;
+
+/**
+ * Immutable snapshot of a dictionary, made by {@link Dictionary#freeze()}.
+ * <p>
+ * Surface forms are stored once, in a minimal automaton that numbers them,
+ * and lemmas keep the numbers of their forms in flat arrays. Strings are only
+ * created for the words actually rendered. Every field is final and nothing
+ * is written after construction, so however the snapshot is handed over, any
+ * number of threads can encode and decode with it without locks or copies.
+ * Loading more forms into the source dictionary doesn't change it.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class FrozenDictionary extends ReadOnlyDictionary {
+
+    private static final class Table implements WordTable {
+        private final int[] lemmaStart;
+        // Ordinal of each form in the automaton.
+        private final int[] forms;
+        private final int[] morphologies;
+        private final WordAutomaton automaton;
+        private final int[] lowestLemmas;
+
+        private Table(WordTable source) {
+            int lemmaCount = source.lemmaCount();
+            lemmaStart = new int[lemmaCount + 1];
+            for (int lemma = 0; lemma < lemmaCount; lemma++) {
+                lemmaStart[lemma + 1] = lemmaStart[lemma] + source.formCount(lemma);
+            }
+            int formCount = lemmaStart[lemmaCount];
+            String[] words = new String[formCount];
+            morphologies = new int[formCount];
+            for (int lemma = 0; lemma < lemmaCount; lemma++) {
+                for (int form = 0; form < lemmaStart[lemma + 1] - lemmaStart[lemma]; form++) {
+                    words[lemmaStart[lemma] + form] = source.word(lemma, form);
+                    morphologies[lemmaStart[lemma] + form] = source.morphology(lemma, form);
+                }
+            }
+
+            String[] sorted = Arrays.stream(words).distinct().sorted().toArray(String[]::new);
+            automaton = new WordAutomaton(sorted);
+            forms = new int[formCount];
+            lowestLemmas = new int[sorted.length];
+            Arrays.fill(lowestLemmas, -1);
+            for (int lemma = 0; lemma < lemmaCount; lemma++) {
+                for (int i = lemmaStart[lemma]; i < lemmaStart[lemma + 1]; i++) {
+                    forms[i] = Arrays.binarySearch(sorted, words[i]);
+                    // Lemmas come in index order, so a shared form keeps the lowest one.
+                    if (lowestLemmas[forms[i]] < 0) {
+                        lowestLemmas[forms[i]] = lemma;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int lemmaCount() {
+            return lemmaStart.length - 1;
+        }
+
+        @Override
+        public int formCount(int lemma) {
+            return lemmaStart[lemma + 1] - lemmaStart[lemma];
+        }
+
+        @Override
+        public String word(int lemma, int form) {
+            return automaton.string(forms[lemmaStart[lemma] + form]);
+        }
+
+        @Override
+        public int morphology(int lemma, int form) {
+            return morphologies[lemmaStart[lemma] + form];
+        }
+
+        @Override
+        public int findLemma(String word) {
+            int ordinal = automaton.ordinal(word);
+            return ordinal < 0 ? -1 : lowestLemmas[ordinal];
+        }
+
+        @Override
+        public int formIds() {
+            return automaton.size();
+        }
+
+        @Override
+        public int formId(String word) {
+            return automaton.ordinal(word);
+        }
+
+        @Override
+        public int formId(int lemma, int form) {
+            return forms[lemmaStart[lemma] + form];
+        }
+
+        @Override
+        public String nearest(String word, int maxCost, IntPredicate filter) {
+            int ordinal = automaton.nearest(word, maxCost, filter);
+            return ordinal < 0 ? null : automaton.string(ordinal);
+        }
+    }
+
+    FrozenDictionary(Dictionary source) {
+        super(source.getRadix(), source.fingerprint(), new Table(source.getAdverbTable()),
+                new Table(source.getNounTable()), new Table(source.getAdjectiveTable()),
+                new Table(source.getVerbTable()));
+    }
+}
@@ -23,37 +23,38 @@
 package ovh.axelandre42.exquisitecorpse;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 /**
+ * Cuts bytes into 7-byte chunks, each packed in a long whose top byte holds
+ * the number of missing bytes of the chunk.
+ *
  * @author Alexandre Waeles <www.axelandre42.ovh>
  *
  */
 public class Longifier {
-    private byte[] bytes;
-    private int index;
+    private ByteBuffer source;
     
     public Longifier(byte[] bytes) {
-        this.bytes = bytes;
-        this.index = 0;
+        this(ByteBuffer.wrap(bytes));
+    }
+    
+    /**
+     * Reads the remaining bytes of the buffer, advancing its position.
+     */
+    public Longifier(ByteBuffer source) {
+        this.source = source;
     }
     
     public boolean hasNext() {
-        int preoffset = bytes.length - (7 * index);
-        return preoffset > 0 ? true : false;
+        return source.hasRemaining();
     }
     
     public long nextLong() {
-        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
-        int preoffset = bytes.length - (7 * index);
-        byte offset = (byte) (preoffset > 7 ? 7 : preoffset);
-        buffer.put((byte) (7 - offset));
-        byte[] b = new byte[7 - offset];
-        Arrays.fill(b, (byte) 0);
-        buffer.put(b);
-        buffer.put(bytes, 7 * index, offset);
-        buffer.flip();
-        index++;
-        return buffer.getLong();
+        int length = Math.min(7, source.remaining());
+        long value = (long) (7 - length) << 56;
+        for (int i = length - 1; i >= 0; i--) {
+            value |= (source.get() & 0xFFL) << (8 * i);
+        }
+        return value;
     }
 }
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the hot paths.
+ * <p>
+ * Metrics are on unless the {@code exquisitecorpse.metrics} system property
+ * is {@code false}. The flag is a constant, so when it's off every recording
+ * call is dead code for the JIT. {@link #install()} publishes them over JMX
+ * and, if {@code exquisitecorpse.metrics.dump} holds a period in seconds,
+ * prints them to stderr at that rate.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class Metrics {
+    public static final boolean ENABLED = !"false".equals(System.getProperty("exquisitecorpse.metrics"));
+
+    private static final Map<String, Counter> counters = new LinkedHashMap<>();
+    private static final Map<String, Histogram> histograms = new LinkedHashMap<>();
+
+    public static final Histogram DICTIONARY_LOAD = histogram("dictionary.load");
+    public static final Histogram SHARD_LOAD = histogram("dictionary.shard");
+    public static final Histogram SENTENCE_GENERATE = histogram("sentence.generate");
+    public static final Histogram SENTENCE_ANALYZE = histogram("sentence.analyze");
+    public static final Histogram AES_ENCODE = histogram("aes.encode");
+    public static final Histogram AES_DECODE = histogram("aes.decode");
+    public static final Histogram AES_ENCODE_SEGMENTED = histogram("aes.encodeSegmented");
+    public static final Histogram AES_DECODE_SEGMENTED = histogram("aes.decodeSegmented");
+    public static final Histogram DH_GENERATE = histogram("dh.generate");
+    public static final Histogram DH_AGREE = histogram("dh.agree");
+
+    // Selections where no form of the digit agrees, and the first form is used instead.
+    public static final Counter NOUN_FALLBACK = counter("select.noun.fallback");
+    public static final Counter ADJECTIVE_FALLBACK = counter("select.adjective.fallback");
+    public static final Counter VERB_FALLBACK = counter("select.verb.fallback");
+    public static final Counter UNKNOWN_WORDS = counter("sentence.analyze.unknown");
+    public static final Counter CORRECTED_WORDS = counter("sentence.analyze.corrected");
+    public static final Counter DICTIONARY_RELOAD_FAILED = counter("dictionary.reload.failed");
+
+    private static boolean installed;
+
+    private Metrics() {
+    }
+
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            if (ENABLED)
+                value.increment();
+        }
+
+        public void add(long amount) {
+            if (ENABLED)
+                value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Durations in power of two buckets: bucket {@code i} holds durations below
+     * {@code 2^i} nanoseconds, the last one everything above.
+     */
+    public static class Histogram {
+        public static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+
+        /**
+         * Records the time elapsed since a {@link Metrics#start()}.
+         */
+        public void record(long start) {
+            if (ENABLED)
+                recordNanos(System.nanoTime() - start);
+        }
+
+        public void recordNanos(long nanos) {
+            if (ENABLED) {
+                buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos))));
+                total.add(nanos);
+            }
+        }
+
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        public double meanMillis() {
+            long count = count();
+            return count == 0 ? 0 : total.sum() / 1e6 / count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile.
+         */
+        public double quantileMillis(double quantile) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return (1L << i) / 1e6;
+                }
+            }
+            return (1L << (BUCKETS - 1)) / 1e6;
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            total.reset();
+        }
+    }
+
+    public interface MetricsMXBean {
+        Map<String, Long> getCounters();
+
+        Map<String, Long> getCounts();
+
+        Map<String, Double> getMeanMillis();
+
+        Map<String, Double> getP50Millis();
+
+        Map<String, Double> getP99Millis();
+
+        String dump();
+
+        void reset();
+    }
+
+    private static class Bean implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCounters() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            counters.forEach((name, counter) -> values.put(name, counter.get()));
+            return values;
+        }
+
+        @Override
+        public Map<String, Long> getCounts() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            histograms.forEach((name, histogram) -> values.put(name, histogram.count()));
+            return values;
+        }
+
+        @Override
+        public Map<String, Double> getMeanMillis() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            histograms.forEach((name, histogram) -> values.put(name, histogram.meanMillis()));
+            return values;
+        }
+
+        @Override
+        public Map<String, Double> getP50Millis() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            histograms.forEach((name, histogram) -> values.put(name, histogram.quantileMillis(0.5)));
+            return values;
+        }
+
+        @Override
+        public Map<String, Double> getP99Millis() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            histograms.forEach((name, histogram) -> values.put(name, histogram.quantileMillis(0.99)));
+            return values;
+        }
+
+        @Override
+        public String dump() {
+            return Metrics.dump();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter();
+        counters.put(name, counter);
+        return counter;
+    }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = new Histogram();
+        histograms.put(name, histogram);
+        return histogram;
+    }
+
+    /**
+     * Start time to pass to {@link Histogram#record(long)}.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Registers the JMX bean and starts the periodic dump if configured. Does
+     * nothing when metrics are off.
+     */
+    public static synchronized void install() {
+        if (!ENABLED || installed) {
+            return;
+        }
+        installed = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(),
+                    new ObjectName("ovh.axelandre42.exquisitecorpse:type=Metrics"));
+        } catch (Exception e) {
+            throw new RuntimeException("Exception during metrics registration.", e);
+        }
+        long period = Long.getLong("exquisitecorpse.metrics.dump", 0);
+        if (period > 0) {
+            startDump(System.err, period, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Prints the metrics at a fixed rate from a daemon thread.
+     */
+    public static ScheduledExecutorService startDump(PrintStream out, long period, TimeUnit unit) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> out.print(dump()), period, period, unit);
+        return executor;
+    }
+
+    public static String dump() {
+        StringBuilder output = new StringBuilder();
+        histograms.forEach((name, histogram) -> output.append(
+                String.format("%-28s count=%d mean=%.3fms p50<%.3fms p99<%.3fms\n", name, histogram.count(),
+                        histogram.meanMillis(), histogram.quantileMillis(0.5), histogram.quantileMillis(0.99))));
+        counters.forEach((name, counter) -> output.append(String.format("%-28s %d\n", name, counter.get())));
+        return output.toString();
+    }
+
+    public static void reset() {
+        counters.values().forEach(counter -> counter.value.reset());
+        histograms.values().forEach(Histogram::reset);
+    }
+}
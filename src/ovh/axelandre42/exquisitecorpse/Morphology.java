@@ -0,0 +1,250 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+/**
+ * Morphology of a word form, packed into a single int.
+ * <p>
+ * Every value of every field owns one bit, so a set of accepted values is a
+ * mask and agreement filtering is a couple of bitwise tests. A field the
+ * dictionary didn't give (or gave a value we don't know) has no bit set.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class Morphology {
+
+    public enum Gender {
+        MAS("Mas"), FEM("Fem"), INV_GEN("InvGen");
+
+        private final String tag;
+
+        Gender(String tag) {
+            this.tag = tag;
+        }
+
+        public static Gender parse(String tag) {
+            for (Gender value : values()) {
+                if (value.tag.equals(tag))
+                    return value;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return tag;
+        }
+    }
+
+    public enum Amount {
+        SG("SG"), PL("PL"), INV_PL("InvPL");
+
+        private final String tag;
+
+        Amount(String tag) {
+            this.tag = tag;
+        }
+
+        public static Amount parse(String tag) {
+            for (Amount value : values()) {
+                if (value.tag.equals(tag))
+                    return value;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return tag;
+        }
+    }
+
+    public enum Person {
+        P1("P1"), P2("P2"), P3("P3");
+
+        private final String tag;
+
+        Person(String tag) {
+            this.tag = tag;
+        }
+
+        public static Person parse(String tag) {
+            for (Person value : values()) {
+                if (value.tag.equals(tag))
+                    return value;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return tag;
+        }
+    }
+
+    public enum Tense {
+        I_PRE("IPre"), I_IMP("IImp"), I_P_SIM("IPSim"), I_FUT("IFut"), C_PRE("CPre"), S_PRE("SPre"), S_IMP("SImp"),
+        IM_PRE("ImPre"), IMP("Imp"), INF("Inf"), P_PRE("PPre"), P_PAS("PPas");
+
+        private final String tag;
+
+        Tense(String tag) {
+            this.tag = tag;
+        }
+
+        public static Tense parse(String tag) {
+            for (Tense value : values()) {
+                if (value.tag.equals(tag))
+                    return value;
+            }
+            return null;
+        }
+
+        /**
+         * Whether the tense is conjugated, i.e. has an amount and a person.
+         */
+        public boolean isFinite() {
+            return this != INF && this != P_PRE && this != P_PAS;
+        }
+
+        @Override
+        public String toString() {
+            return tag;
+        }
+    }
+
+    public enum Type {
+        CARD("Card");
+
+        private final String tag;
+
+        Type(String tag) {
+            this.tag = tag;
+        }
+
+        public static Type parse(String tag) {
+            for (Type value : values()) {
+                if (value.tag.equals(tag))
+                    return value;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return tag;
+        }
+    }
+
+    private static final int GENDER_SHIFT = 0;
+    private static final int AMOUNT_SHIFT = GENDER_SHIFT + Gender.values().length;
+    private static final int PERSON_SHIFT = AMOUNT_SHIFT + Amount.values().length;
+    private static final int TENSE_SHIFT = PERSON_SHIFT + Person.values().length;
+    private static final int TYPE_SHIFT = TENSE_SHIFT + Tense.values().length;
+    private static final int END_SHIFT = TYPE_SHIFT + Type.values().length;
+
+    public static final int GENDERS = bits(GENDER_SHIFT, AMOUNT_SHIFT);
+    public static final int AMOUNTS = bits(AMOUNT_SHIFT, PERSON_SHIFT);
+    public static final int PERSONS = bits(PERSON_SHIFT, TENSE_SHIFT);
+    public static final int TENSES = bits(TENSE_SHIFT, TYPE_SHIFT);
+    public static final int TYPES = bits(TYPE_SHIFT, END_SHIFT);
+
+    private static final int[] FIELDS = { GENDERS, AMOUNTS, PERSONS, TENSES, TYPES };
+
+    private Morphology() {
+    }
+
+    private static int bits(int from, int to) {
+        return (1 << to) - (1 << from);
+    }
+
+    public static int of(Gender gender) {
+        return gender == null ? 0 : 1 << (GENDER_SHIFT + gender.ordinal());
+    }
+
+    public static int of(Amount amount) {
+        return amount == null ? 0 : 1 << (AMOUNT_SHIFT + amount.ordinal());
+    }
+
+    public static int of(Person person) {
+        return person == null ? 0 : 1 << (PERSON_SHIFT + person.ordinal());
+    }
+
+    public static int of(Tense tense) {
+        return tense == null ? 0 : 1 << (TENSE_SHIFT + tense.ordinal());
+    }
+
+    public static int of(Type type) {
+        return type == null ? 0 : 1 << (TYPE_SHIFT + type.ordinal());
+    }
+
+    public static Gender gender(int morphology) {
+        return field(Gender.values(), morphology, GENDER_SHIFT, GENDERS);
+    }
+
+    public static Amount amount(int morphology) {
+        return field(Amount.values(), morphology, AMOUNT_SHIFT, AMOUNTS);
+    }
+
+    public static Person person(int morphology) {
+        return field(Person.values(), morphology, PERSON_SHIFT, PERSONS);
+    }
+
+    public static Tense tense(int morphology) {
+        return field(Tense.values(), morphology, TENSE_SHIFT, TENSES);
+    }
+
+    public static Type type(int morphology) {
+        return field(Type.values(), morphology, TYPE_SHIFT, TYPES);
+    }
+
+    private static <E> E field(E[] values, int morphology, int shift, int mask) {
+        int bit = morphology & mask;
+        return bit == 0 ? null : values[Integer.numberOfTrailingZeros(bit) - shift];
+    }
+
+    /**
+     * Tests a form against a filter built by or-ing the accepted values of each
+     * field: every field the filter mentions must hold one of its values.
+     */
+    public static boolean matches(int morphology, int filter) {
+        for (int field : FIELDS) {
+            if ((filter & field) != 0 && (morphology & filter & field) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Filter accepting every conjugated tense.
+     */
+    public static int finiteTenses() {
+        int filter = 0;
+        for (Tense tense : Tense.values()) {
+            if (tense.isFinite())
+                filter |= of(tense);
+        }
+        return filter;
+    }
+}
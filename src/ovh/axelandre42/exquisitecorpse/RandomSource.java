@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Randomness used to pick among equivalent forms and determiners. It never
+ * changes the encoded value, only which of its sentences is produced.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public interface RandomSource {
+
+    /**
+     * The calling thread's {@link ThreadLocalRandom}: no shared state, so it
+     * can be used from any number of threads at once.
+     */
+    RandomSource THREAD_LOCAL = new RandomSource() {
+        @Override
+        public int nextInt(int bound) {
+            return ThreadLocalRandom.current().nextInt(bound);
+        }
+
+        @Override
+        public boolean nextBoolean() {
+            return ThreadLocalRandom.current().nextBoolean();
+        }
+    };
+
+    /**
+     * Value in {@code [0, bound)}.
+     */
+    int nextInt(int bound);
+
+    boolean nextBoolean();
+
+    /**
+     * Reproducible source: the same seed gives the same sentences. Not
+     * thread-safe, use one per thread.
+     */
+    static RandomSource seeded(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        return new RandomSource() {
+            @Override
+            public int nextInt(int bound) {
+                return random.nextInt(bound);
+            }
+
+            @Override
+            public boolean nextBoolean() {
+                return random.nextBoolean();
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceAnalyzer;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceBuilder;
+import ovh.axelandre42.exquisitecorpse.SentenceTemplates.Part;
+import ovh.axelandre42.exquisitecorpse.util.IntList;
+import ovh.axelandre42.exquisitecorpse.util.MixedRadix;
+
+/**
+ * Writes a whole payload as a single integer in the mixed radix of its words,
+ * sentence after sentence of the same template, and reads it back.
+ * <p>
+ * {@link SentenceOutputStream} spends a sentence and a length byte on every
+ * 7 bytes. Here the only overhead is a {@code 0x01} byte put in front of the
+ * payload, which keeps its leading zeros and thus its length, and the unused
+ * part of the last word. The last sentence is cut after that word.
+ * <p>
+ * The reader takes each word's radix from its annotation, or from the
+ * template for plain sentences. The whole payload is held in memory, and the
+ * format is not readable by {@link SentenceInputStream}.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public class SentenceCodec {
+    private final ReadOnlyDictionary dict;
+    private final Part[] template;
+    private final SentenceParser parser;
+
+    /**
+     * Uses the longest default template, which has the most words per noun.
+     */
+    public SentenceCodec(ReadOnlyDictionary dict) {
+        this(dict, SentenceTemplates.DEFAULT[SentenceTemplates.DEFAULT.length - 1]);
+    }
+
+    /**
+     * @param template must start with a noun, so that every cut of it is a
+     *                 sentence.
+     */
+    public SentenceCodec(ReadOnlyDictionary dict, Part[] template) {
+        if (template.length == 0 || template[0] != Part.NOUN) {
+            throw new IllegalArgumentException("The template must start with a noun.");
+        }
+        this.dict = dict;
+        this.template = template.clone();
+        // Every cut of the template, for the last sentence.
+        Part[][] shapes = new Part[template.length][];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = Arrays.copyOf(template, template.length - i);
+        }
+        this.parser = new SentenceParser(dict, shapes);
+    }
+
+    public void encode(byte[] payload, Writer out, boolean annotated) throws IOException {
+        encode(payload, out, annotated, RandomSource.THREAD_LOCAL);
+    }
+
+    /**
+     * Writes the dictionary version, then one sentence per line, in the
+     * annotated form read by {@link #decode(Reader)} or as plain sentences.
+     */
+    public void encode(byte[] payload, Writer out, boolean annotated, RandomSource random) throws IOException {
+        byte[] marked = new byte[payload.length + 1];
+        marked[0] = 1;
+        System.arraycopy(payload, 0, marked, 1, payload.length);
+        BigInteger value = new BigInteger(1, marked);
+
+        MixedRadix radix = radixFor(value);
+        int[] digits = radix.toDigits(value);
+
+        out.write(SentenceOutputStream.header(dict));
+        out.write('\n');
+        for (int start = 0; start < digits.length; start += template.length) {
+            SentenceBuilder builder = new SentenceBuilder(dict, 0, random);
+            for (int i = start; i < Math.min(start + template.length, digits.length); i++) {
+                builder.add(template[i - start], digits[i]);
+            }
+            if (annotated) {
+                builder.buildAnnotatedTo(out);
+            } else {
+                builder.buildTo(out);
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads annotated or plain sentences up to the end of the reader or the
+     * first empty line.
+     */
+    public byte[] decode(Reader in) throws IOException {
+        BufferedReader lines = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        IntList digits = new IntList(256);
+        IntList radices = new IntList(256);
+        boolean first = true;
+        String line;
+        while ((line = lines.readLine()) != null && !line.isEmpty()) {
+            if (first && line.startsWith(SentenceOutputStream.HEADER)) {
+                if (SentenceOutputStream.fingerprint(line) != dict.fingerprint()) {
+                    throw new IOException("Message was encoded with another dictionary version.");
+                }
+            } else {
+                new SentenceAnalyzer(dict, parser.tokens(line)).findDigits(digits, radices);
+            }
+            first = false;
+        }
+
+        byte[] marked;
+        try {
+            marked = new MixedRadix(radices.toArray()).fromDigits(digits.toArray()).toByteArray();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed message.", e);
+        }
+        if (marked[0] != 1) {
+            throw new IOException("Malformed message.");
+        }
+        byte[] payload = new byte[marked.length - 1];
+        System.arraycopy(marked, 1, payload, 0, payload.length);
+        return payload;
+    }
+
+    /**
+     * Shortest run of template words able to hold the value.
+     */
+    private MixedRadix radixFor(BigInteger value) {
+        // Estimated with logarithms, then checked exactly: the estimate can be a word off.
+        double bits = 0;
+        int length = 0;
+        while (bits < value.bitLength()) {
+            bits += Math.log(radix(length++)) / Math.log(2);
+        }
+        MixedRadix radix = radices(length);
+        while (radix.capacity().compareTo(value) <= 0) {
+            radix = radices(++length);
+        }
+        BigInteger shorter = radix.capacity().divide(BigInteger.valueOf(radix(length - 1)));
+        return shorter.compareTo(value) > 0 ? radices(length - 1) : radix;
+    }
+
+    private MixedRadix radices(int length) {
+        int[] radices = new int[length];
+        for (int i = 0; i < length; i++) {
+            radices[i] = radix(i);
+        }
+        return new MixedRadix(radices);
+    }
+
+    private int radix(int position) {
+        return dict.getAmount(template[position % template.length]);
+    }
+}
@@ -0,0 +1,178 @@
+/* 
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceAnalyzer;
+
+/**
+ * Reads sentences, one per line, and yields the decrypted bytes as each
+ * sentence is read. Lines may be annotated or plain, see {@link SentenceParser}.
+ * <p>
+ * The message ends at the end of the reader or at the first empty line. When
+ * it starts with a dictionary fingerprint, the matching version is used, or
+ * the stream fails if there is none.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public class SentenceInputStream extends InputStream {
+    private ReadOnlyDictionary dict;
+    private DictionaryReloader dictionaries;
+    private Cipher cipher;
+    private BufferedReader in;
+    private SentenceParser parser;
+
+    private ByteBuffer chunk = ByteBuffer.allocate(7);
+    private Delongifier chunks = new Delongifier(chunk);
+    private ByteBuffer plain;
+    private boolean started;
+    private boolean finished;
+
+    public SentenceInputStream(ReadOnlyDictionary dict, AES aes, Reader in) {
+        this(aes, in);
+        this.dict = dict;
+    }
+
+    /**
+     * Decodes with the version of the message's fingerprint, or the current
+     * one if it has none.
+     */
+    public SentenceInputStream(DictionaryReloader dictionaries, AES aes, Reader in) {
+        this(aes, in);
+        this.dictionaries = dictionaries;
+    }
+
+    private SentenceInputStream(AES aes, Reader in) {
+        this.cipher = aes.newCipher(Cipher.DECRYPT_MODE);
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        this.plain = ByteBuffer.allocate(64);
+        this.plain.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return plain.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int read = Math.min(len, plain.remaining());
+        plain.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return plain.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Decodes sentences until some plaintext is available. Returns false at
+     * the end of the message.
+     */
+    private boolean fill() throws IOException {
+        try {
+            while (!plain.hasRemaining()) {
+                if (finished) {
+                    return false;
+                }
+                String line = in.readLine();
+                if (!started) {
+                    started = true;
+                    if (dictionaries != null) {
+                        dict = dictionaries.current();
+                    }
+                    if (line != null && line.startsWith(SentenceOutputStream.HEADER)) {
+                        selectVersion(SentenceOutputStream.fingerprint(line));
+                        continue;
+                    }
+                }
+                int written;
+                if (line == null || line.isEmpty()) {
+                    finished = true;
+                    ensureCapacity(cipher.getOutputSize(0));
+                    written = cipher.doFinal(plain.array(), 0);
+                } else {
+                    if (parser == null) {
+                        parser = new SentenceParser(dict);
+                    }
+                    chunk.clear();
+                    try {
+                        SentenceAnalyzer anal = new SentenceAnalyzer(dict, parser.tokens(line));
+                        chunks.pushLong(anal.findLong());
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Malformed sentence: " + line, e);
+                    }
+                    ensureCapacity(cipher.getOutputSize(chunk.position()));
+                    written = cipher.update(chunk.array(), 0, chunk.position(), plain.array(), 0);
+                }
+                plain.position(0);
+                plain.limit(written);
+            }
+            return true;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Exception during decoding.", e);
+        }
+    }
+
+    private void selectVersion(long fingerprint) throws IOException {
+        if (dictionaries != null) {
+            dict = dictionaries.version(fingerprint);
+            if (dict == null) {
+                throw new IOException("Unknown dictionary version " + Long.toHexString(fingerprint) + ".");
+            }
+        } else if (dict.fingerprint() != fingerprint) {
+            throw new IOException("Message was encoded with another dictionary version.");
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (plain.capacity() < size) {
+            plain = ByteBuffer.allocate(size);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/* 
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.SentenceBuilder;
+
+/**
+ * Encrypts whatever is written to it and emits the ciphertext as sentences,
+ * one per line, as soon as each 7-byte chunk is complete.
+ * <p>
+ * Only a bounded amount of ciphertext is held at any time, whatever the size
+ * of the message. The last chunk and the padding are emitted on close.
+ * <p>
+ * Output starts with a {@code Dict:<fingerprint>} line naming the dictionary
+ * version, so that the reader can pick the same one.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public class SentenceOutputStream extends OutputStream {
+    static final String HEADER = "Dict:";
+
+    /**
+     * First line of a message encoded with this dictionary.
+     */
+    static String header(ReadOnlyDictionary dict) {
+        return HEADER + Long.toHexString(dict.fingerprint());
+    }
+
+    /**
+     * Fingerprint named by the first line of a message, which starts with
+     * {@link #HEADER}.
+     */
+    static long fingerprint(String header) throws IOException {
+        try {
+            return Long.parseUnsignedLong(header.substring(HEADER.length()), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed dictionary header: " + header, e);
+        }
+    }
+
+    private static final int SLICE = 1024;
+
+    private ReadOnlyDictionary dict;
+    private Cipher cipher;
+    private Writer out;
+    private boolean annotated;
+
+    private ByteBuffer pending;
+    private Longifier chunks;
+    private boolean started;
+    private boolean closed;
+
+    /**
+     * @param annotated whether to write the {@code Nom:word ...} form that
+     *                  {@link SentenceInputStream} reads back, or the plain
+     *                  sentence.
+     */
+    public SentenceOutputStream(ReadOnlyDictionary dict, AES aes, Writer out, boolean annotated) {
+        this.dict = dict;
+        this.cipher = aes.newCipher(Cipher.ENCRYPT_MODE);
+        this.out = out;
+        this.annotated = annotated;
+        this.pending = ByteBuffer.allocate(cipher.getOutputSize(SLICE) + 7);
+        this.chunks = new Longifier(pending);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        try {
+            while (len > 0) {
+                int slice = Math.min(len, SLICE);
+                int written = cipher.update(b, off, slice, pending.array(), pending.position());
+                pending.position(pending.position() + written);
+                emit(false);
+                off += slice;
+                len -= slice;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Exception during encoding.", e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            int written = cipher.doFinal(pending.array(), pending.position());
+            pending.position(pending.position() + written);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Exception during encoding.", e);
+        }
+        emit(true);
+        out.close();
+    }
+
+    /**
+     * Writes a sentence for every complete chunk, or every chunk on the last
+     * call.
+     */
+    private void emit(boolean last) throws IOException {
+        if (!started) {
+            out.write(header(dict));
+            out.write('\n');
+        }
+        started = true;
+        pending.flip();
+        int end = pending.limit();
+        if (!last) {
+            pending.limit(end - pending.remaining() % 7);
+        }
+        while (chunks.hasNext()) {
+            SentenceBuilder builder = new SentenceBuilder(dict, chunks.nextLong());
+            ExquisiteCorpse.processsSenctence(builder);
+            if (annotated) {
+                builder.buildAnnotatedTo(out);
+            } else {
+                builder.buildTo(out);
+            }
+            out.write('\n');
+        }
+        pending.limit(end);
+        pending.compact();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+import ovh.axelandre42.exquisitecorpse.SentenceTemplates.Part;
+
+/**
+ * Turns a sentence as written by {@code SentenceBuilder.build()}, with
+ * determiners, a capital and a final period, back into the annotated tokens
+ * read by {@code SentenceAnalyzer}.
+ * <p>
+ * The words are laid against each shape the sentence may have. A noun is the
+ * word after a determiner, or the rest of a word starting with {@code l'}, so
+ * that the determiners fix where the nouns are and the shape tells the role of
+ * the words in between. When several shapes fit, the one with the fewest
+ * words the dictionary doesn't know in their role wins, the first one on a
+ * tie.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public class SentenceParser {
+    private static final String[] DETERMINERS = { "le", "la", "les", "un", "une", "des" };
+
+    private ReadOnlyDictionary dict;
+    private Part[][] shapes;
+
+    /**
+     * Reads sentences of the dictionary's templates.
+     */
+    public SentenceParser(ReadOnlyDictionary dict) {
+        this.dict = dict;
+        SentenceTemplates templates = dict.getTemplates();
+        this.shapes = new Part[templates.size()][];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = templates.template(i);
+        }
+    }
+
+    public SentenceParser(ReadOnlyDictionary dict, Part[]... shapes) {
+        this.dict = dict;
+        this.shapes = new Part[shapes.length][];
+        for (int i = 0; i < shapes.length; i++) {
+            this.shapes[i] = shapes[i].clone();
+        }
+    }
+
+    /**
+     * Whether a line is already in the {@code Nom:word ...} form.
+     */
+    public static boolean isAnnotated(String line) {
+        int colon = line.indexOf(':');
+        int space = line.indexOf(' ');
+        return colon >= 0 && (space < 0 || colon < space) && Part.parse(line.substring(0, colon)) != null;
+    }
+
+    /**
+     * Annotated tokens of a line in either form.
+     */
+    public String[] tokens(String line) {
+        return isAnnotated(line) ? line.split(" ") : parse(line);
+    }
+
+    /**
+     * Annotated tokens of a plain sentence.
+     *
+     * @throws IllegalArgumentException if the sentence has none of the shapes.
+     */
+    public String[] parse(String sentence) {
+        String[] words = words(sentence);
+        String[] best = null;
+        int bestMisses = Integer.MAX_VALUE;
+        for (Part[] shape : shapes) {
+            List<String> tokens = new ArrayList<>(shape.length);
+            int misses = match(words, shape, tokens);
+            if (misses < bestMisses) {
+                best = tokens.toArray(new String[0]);
+                bestMisses = misses;
+                if (misses == 0) {
+                    break;
+                }
+            }
+        }
+        if (best == null) {
+            throw new IllegalArgumentException("Not a sentence of this dictionary: " + sentence);
+        }
+        return best;
+    }
+
+    /**
+     * Splits on single spaces, as {@code build()} joins: a word with an empty
+     * form leaves an empty word behind.
+     */
+    private static String[] words(String sentence) {
+        String trimmed = sentence.trim();
+        if (trimmed.endsWith(".")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        if (!trimmed.isEmpty()) {
+            int first = trimmed.codePointAt(0);
+            trimmed = new StringBuilder(trimmed.length()).appendCodePoint(Character.toLowerCase(first))
+                    .append(trimmed, Character.charCount(first), trimmed.length()).toString();
+        }
+        return trimmed.split(" ", -1);
+    }
+
+    /**
+     * Lays the words against a shape, appending the annotated tokens. Returns
+     * the number of unknown words and mismatched determiners, or
+     * Integer.MAX_VALUE if the words don't have the shape.
+     */
+    private int match(String[] words, Part[] shape, List<String> tokens) {
+        int misses = 0;
+        int i = 0;
+        for (Part part : shape) {
+            if (i >= words.length) {
+                return Integer.MAX_VALUE;
+            }
+            String word = words[i++];
+            if (part == Part.NOUN) {
+                String determiner;
+                if (isElided(word)) {
+                    determiner = "l'";
+                    word = word.substring(2);
+                } else if (isDeterminer(word) && i < words.length) {
+                    determiner = word.toLowerCase();
+                    word = words[i++];
+                } else {
+                    return Integer.MAX_VALUE;
+                }
+                if (!agrees(determiner, word)) {
+                    misses++;
+                }
+            }
+            if (dict.getIndex(part, word) < 0) {
+                misses++;
+            }
+            tokens.add(part + ":" + word);
+        }
+        return i == words.length ? misses : Integer.MAX_VALUE;
+    }
+
+    private static boolean isElided(String word) {
+        return word.length() > 2 && (word.charAt(0) == 'l' || word.charAt(0) == 'L')
+                && (word.charAt(1) == '\'' || word.charAt(1) == '’');
+    }
+
+    private static boolean isDeterminer(String word) {
+        for (String determiner : DETERMINERS) {
+            if (determiner.equalsIgnoreCase(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether {@code selectDetForNoun} could have put this determiner before
+     * the noun: it must agree in gender and number with one of the noun's
+     * forms, and "le" and "la" are elided before a vowel, and only there.
+     */
+    private boolean agrees(String determiner, String noun) {
+        return dict.isDetForNoun(determiner, noun);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import ovh.axelandre42.exquisitecorpse.ExquisiteCorpse.ReadOnlyDictionary;
+
+/**
+ * Sentence templates and the number of values each can carry with a given
+ * dictionary, computed once with exact integer arithmetic.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class SentenceTemplates {
+
+    public enum Part {
+        NOUN("Nom"), ADJECTIVE("Adj"), VERB("Ver"), ADVERB("Adv");
+
+        private final String tag;
+
+        Part(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * Part of an annotated word's tag, or null.
+         */
+        public static Part parse(String tag) {
+            for (Part value : values()) {
+                if (value.tag.equals(tag))
+                    return value;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return tag;
+        }
+    }
+
+    /**
+     * The historical forms 1 to 3.
+     */
+    public static final Part[][] DEFAULT = {
+            { Part.NOUN, Part.VERB, Part.NOUN, Part.ADJECTIVE },
+            { Part.NOUN, Part.ADJECTIVE, Part.VERB, Part.NOUN, Part.ADJECTIVE },
+            { Part.NOUN, Part.ADJECTIVE, Part.VERB, Part.ADVERB, Part.NOUN, Part.ADJECTIVE } };
+
+    private final Part[][] templates;
+    private final long[] capacities;
+    // Template indices, shortest first.
+    private final int[] order;
+
+    /**
+     * @param templates adjectives and verbs agree with the last noun before
+     *                  them, so each template must have one.
+     */
+    public SentenceTemplates(ReadOnlyDictionary dict, Part[]... templates) {
+        this.templates = new Part[templates.length][];
+        this.capacities = new long[templates.length];
+        for (int i = 0; i < templates.length; i++) {
+            Part[] template = templates[i].clone();
+            boolean noun = false;
+            long capacity = 1;
+            for (Part part : template) {
+                if ((part == Part.ADJECTIVE || part == Part.VERB) && !noun) {
+                    throw new IllegalArgumentException("Adjectives and verbs must follow a noun.");
+                }
+                noun |= part == Part.NOUN;
+                capacity = multiplySaturated(capacity, dict.getAmount(part));
+            }
+            this.templates[i] = template;
+            this.capacities[i] = capacity;
+        }
+        Integer[] sorted = new Integer[templates.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, Comparator.comparingInt(i -> this.templates[i].length));
+        order = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            order[i] = sorted[i];
+        }
+    }
+
+    /**
+     * Product, or Long.MAX_VALUE once it no longer fits: such a template holds
+     * every value.
+     */
+    private static long multiplySaturated(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Index of the shortest template able to carry the value.
+     */
+    public int select(long value) {
+        for (int i : order) {
+            if (value < capacities[i] || capacities[i] == Long.MAX_VALUE) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No template can carry " + value + ".");
+    }
+
+    public Part[] template(int index) {
+        return templates[index].clone();
+    }
+
+    Part[] parts(int index) {
+        return templates[index];
+    }
+
+    public long capacity(int index) {
+        return capacities[index];
+    }
+
+    public int size() {
+        return templates.length;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse;
+
+import java.util.function.IntPredicate;
+
+import ovh.axelandre42.exquisitecorpse.util.EditDistance;
+
+/**
+ * Read access to the forms of one part of speech, grouped by lemma index.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public interface WordTable {
+
+    int lemmaCount();
+
+    int formCount(int lemma);
+
+    String word(int lemma, int form);
+
+    /**
+     * Packed {@link Morphology} of a form.
+     */
+    int morphology(int lemma, int form);
+
+    /**
+     * Lowest index of a lemma having this surface form, or -1.
+     */
+    int findLemma(String word);
+
+    /**
+     * Upper bound of the form identifiers.
+     */
+    int formIds();
+
+    /**
+     * Identifier of a surface form, the same for every lemma having it, or -1.
+     */
+    int formId(String word);
+
+    int formId(int lemma, int form);
+
+    /**
+     * Form closest to a word by {@link EditDistance}, at most maxCost away and whose identifier
+     * the filter accepts, or null. Ties go to the first form in {@link String#compareTo} order.
+     * <p>
+     * This scans every form; tables with an index should do better.
+     */
+    default String nearest(String word, int maxCost, IntPredicate filter) {
+        String best = null;
+        int bestCost = maxCost + 1;
+        for (int lemma = 0; lemma < lemmaCount(); lemma++) {
+            for (int form = 0; form < formCount(lemma); form++) {
+                String candidate = word(lemma, form);
+                int cost = EditDistance.bounded(word, candidate, bestCost);
+                if ((cost < bestCost || cost == bestCost && best != null && candidate.compareTo(best) < 0)
+                        && filter.test(formId(lemma, form))) {
+                    best = candidate;
+                    bestCost = cost;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse.util;
+
+import java.text.Normalizer;
+
+/**
+ * Levenshtein distance where a letter typed without its accent, or in
+ * another case, costs half an edit: {@code quadragenaire} is at
+ * {@link #ACCENT} from {@code quadragénaire}, a real typo at {@link #EDIT}.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class EditDistance {
+    public static final int ACCENT = 1;
+    public static final int EDIT = 2;
+
+    // Base lower-case letter of the Latin characters.
+    private static final char[] FOLDED = new char[0x250];
+
+    static {
+        for (char c = 0; c < FOLDED.length; c++) {
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            FOLDED[c] = Character.toLowerCase(decomposed.charAt(0));
+        }
+    }
+
+    private EditDistance() {
+    }
+
+    public static char fold(char c) {
+        return c < FOLDED.length ? FOLDED[c] : Character.toLowerCase(c);
+    }
+
+    public static int substitution(char a, char b) {
+        if (a == b) {
+            return 0;
+        }
+        return fold(a) == fold(b) ? ACCENT : EDIT;
+    }
+
+    /**
+     * First row of the table, for an empty prefix of the other string.
+     */
+    public static int[] firstRow(int length) {
+        int[] row = new int[length + 1];
+        for (int i = 0; i <= length; i++) {
+            row[i] = i * EDIT;
+        }
+        return row;
+    }
+
+    /**
+     * Fills the row of the table after the character c of the other string.
+     * Returns its minimum, below which no longer string can go.
+     */
+    public static int nextRow(int[] previous, int[] row, CharSequence word, char c) {
+        row[0] = previous[0] + EDIT;
+        int min = row[0];
+        for (int i = 1; i < row.length; i++) {
+            int cost = Math.min(previous[i - 1] + substitution(word.charAt(i - 1), c),
+                    Math.min(previous[i], row[i - 1]) + EDIT);
+            row[i] = cost;
+            min = Math.min(min, cost);
+        }
+        return min;
+    }
+
+    /**
+     * Distance between two strings, or any value above max once it is known
+     * to exceed it.
+     */
+    public static int bounded(CharSequence a, CharSequence b, int max) {
+        if (Math.abs(a.length() - b.length()) * EDIT > max) {
+            return max + 1;
+        }
+        int[] previous = firstRow(a.length());
+        int[] row = new int[previous.length];
+        for (int j = 0; j < b.length(); j++) {
+            if (nextRow(previous, row, a, b.charAt(j)) > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous[a.length()];
+    }
+}
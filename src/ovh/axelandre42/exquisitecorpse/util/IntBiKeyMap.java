@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse.util;
+
+import java.util.Arrays;
+
+/**
+ * {@link BiKeyMap} specialized for small non-negative int keys on the A
+ * side and String keys on the B side.
+ * <p>
+ * Values are stored in an array indexed by the int key, and the String side
+ * is an open addressing table of ints, so neither lookup boxes.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public class IntBiKeyMap<V> {
+    private Object[] values;
+    private String[] keysB;
+    private int size;
+
+    private String[] slotKeys;
+    private int[] slotValues;
+    private int slotCount;
+
+    public IntBiKeyMap() {
+        this(16);
+    }
+
+    public IntBiKeyMap(int capacity) {
+        capacity = Math.max(1, capacity);
+        values = new Object[capacity];
+        keysB = new String[capacity];
+        int slots = Integer.highestOneBit(capacity * 2 - 1) * 2;
+        slotKeys = new String[slots];
+        slotValues = new int[slots];
+    }
+
+    public void put(int keyA, String keyB, V value) {
+        if (keyA < 0) {
+            throw new IllegalArgumentException("Negative key: " + keyA);
+        }
+        if (keyA >= values.length) {
+            int capacity = Math.max(keyA + 1, values.length * 2);
+            values = Arrays.copyOf(values, capacity);
+            keysB = Arrays.copyOf(keysB, capacity);
+        }
+        if (keysB[keyA] == null) {
+            size++;
+        }
+        values[keyA] = value;
+        keysB[keyA] = keyB;
+
+        int slot = slot(keyB);
+        if (slotKeys[slot] == null) {
+            slotKeys[slot] = keyB;
+            slotCount++;
+        }
+        slotValues[slot] = keyA;
+        if (slotCount * 2 > slotKeys.length) {
+            growSlots();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getFromA(int key) {
+        return key >= 0 && key < values.length ? (V) values[key] : null;
+    }
+
+    public V getFromB(String key) {
+        int slot = slot(key);
+        return slotKeys[slot] == null ? null : getFromA(slotValues[slot]);
+    }
+
+    /**
+     * Returns the A key of a B key, or -1.
+     */
+    public int getKeyFromB(String key) {
+        int slot = slot(key);
+        return slotKeys[slot] == null ? -1 : slotValues[slot];
+    }
+
+    public String getKeyFromA(int key) {
+        return key >= 0 && key < keysB.length ? keysB[key] : null;
+    }
+
+    public boolean containsKeyA(int key) {
+        return getKeyFromA(key) != null;
+    }
+
+    public boolean containsKeyB(String key) {
+        return slotKeys[slot(key)] != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Slot holding the key, or the empty slot where it belongs.
+     */
+    private int slot(String key) {
+        int mask = slotKeys.length - 1;
+        int hash = key.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (slotKeys[slot] != null && !slotKeys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growSlots() {
+        String[] oldKeys = slotKeys;
+        int[] oldValues = slotValues;
+        slotKeys = new String[oldKeys.length * 2];
+        slotValues = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                slotKeys[slot] = oldKeys[i];
+                slotValues[slot] = oldValues[i];
+            }
+        }
+    }
+}
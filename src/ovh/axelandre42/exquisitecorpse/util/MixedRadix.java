@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse.util;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a non-negative integer in a mixed radix, least significant digit
+ * first, and reads it back.
+ * <p>
+ * Both directions split the digits in halves around the product of the
+ * radices of the lower half, so a long number costs a few big divisions or
+ * multiplications instead of one pass over it per digit.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class MixedRadix {
+    // Below this many digits, one digit at a time is faster.
+    private static final int LEAF = 16;
+
+    private final int[] radices;
+    // Products of the split ranges, keyed by from << 32 | to.
+    private final Map<Long, BigInteger> products = new HashMap<>();
+
+    public MixedRadix(int[] radices) {
+        for (int radix : radices) {
+            if (radix < 1) {
+                throw new IllegalArgumentException("Radices must be positive.");
+            }
+        }
+        this.radices = radices.clone();
+    }
+
+    public int length() {
+        return radices.length;
+    }
+
+    /**
+     * Product of the radices, i.e. the number of values the digits can hold.
+     */
+    public BigInteger capacity() {
+        return product(0, radices.length);
+    }
+
+    public int[] toDigits(BigInteger value) {
+        if (value.signum() < 0 || value.compareTo(capacity()) >= 0) {
+            throw new IllegalArgumentException("Value doesn't fit in " + radices.length + " digits.");
+        }
+        int[] digits = new int[radices.length];
+        split(value, 0, radices.length, digits);
+        return digits;
+    }
+
+    public BigInteger fromDigits(int[] digits) {
+        if (digits.length != radices.length) {
+            throw new IllegalArgumentException("Expected " + radices.length + " digits, got " + digits.length + ".");
+        }
+        for (int i = 0; i < digits.length; i++) {
+            if (digits[i] < 0 || digits[i] >= radices[i]) {
+                throw new IllegalArgumentException("Digit " + i + " is out of range.");
+            }
+        }
+        return join(digits, 0, digits.length);
+    }
+
+    private void split(BigInteger value, int from, int to, int[] digits) {
+        if (to - from <= LEAF) {
+            for (int i = from; i < to; i++) {
+                BigInteger[] division = value.divideAndRemainder(BigInteger.valueOf(radices[i]));
+                digits[i] = division[1].intValue();
+                value = division[0];
+            }
+            return;
+        }
+        int middle = middle(from, to);
+        BigInteger[] division = value.divideAndRemainder(product(from, middle));
+        split(division[1], from, middle, digits);
+        split(division[0], middle, to, digits);
+    }
+
+    private BigInteger join(int[] digits, int from, int to) {
+        if (to - from <= LEAF) {
+            BigInteger value = BigInteger.ZERO;
+            for (int i = to - 1; i >= from; i--) {
+                value = value.multiply(BigInteger.valueOf(radices[i])).add(BigInteger.valueOf(digits[i]));
+            }
+            return value;
+        }
+        int middle = middle(from, to);
+        return join(digits, middle, to).multiply(product(from, middle)).add(join(digits, from, middle));
+    }
+
+    private BigInteger product(int from, int to) {
+        if (to - from <= LEAF) {
+            BigInteger product = BigInteger.ONE;
+            for (int i = from; i < to; i++) {
+                product = product.multiply(BigInteger.valueOf(radices[i]));
+            }
+            return product;
+        }
+        Long key = (long) from << 32 | to;
+        BigInteger product = products.get(key);
+        if (product == null) {
+            int middle = middle(from, to);
+            product = product(from, middle).multiply(product(middle, to));
+            products.put(key, product);
+        }
+        return product;
+    }
+
+    /**
+     * Splits off the largest power of two below the length; any fixed rule
+     * would do, as long as each range is always split the same way.
+     */
+    private static int middle(int from, int to) {
+        return from + Integer.highestOneBit(to - from - 1);
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits tab (or space) separated lines straight from a byte buffer.
+ * <p>
+ * Fields are reported as byte ranges of the buffer; strings are only created
+ * on request. A range that isn't valid UTF-8 is decoded as ISO-8859-1, which
+ * is how the few mis-encoded dictionary lines were written.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public class TsvTokenizer {
+    private ByteBuffer buffer;
+    private int position;
+
+    private int fields;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+
+    private byte[] scratch = new byte[64];
+
+    // Byte range -> shared String, for values repeated on many lines.
+    private int[] symbolHashes = new int[256];
+    private byte[][] symbolBytes = new byte[256][];
+    private String[] symbolValues = new String[256];
+    private int symbolCount;
+
+    public TsvTokenizer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+    }
+
+    /**
+     * Moves to the next line. Returns false once the buffer is exhausted.
+     */
+    public boolean next() {
+        int limit = buffer.limit();
+        if (position >= limit) {
+            return false;
+        }
+        fields = 0;
+        int start = position;
+        int i = position;
+        for (; i < limit; i++) {
+            byte c = buffer.get(i);
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\t' || c == ' ') {
+                addField(start, i);
+                start = i + 1;
+            }
+        }
+        int end = i;
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        addField(start, end);
+        position = i + 1;
+        return true;
+    }
+
+    private void addField(int start, int end) {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+        }
+        starts[fields] = start;
+        ends[fields] = end;
+        fields++;
+    }
+
+    public int fields() {
+        return fields;
+    }
+
+    public int start(int field) {
+        return starts[field];
+    }
+
+    public int end(int field) {
+        return ends[field];
+    }
+
+    /**
+     * Splits a range on a separator, storing up to {@code bounds.length / 2}
+     * (start, end) pairs. Returns the number of pieces, stored or not.
+     */
+    public int split(int start, int end, byte separator, int[] bounds) {
+        int count = 0;
+        int pieceStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer.get(i) == separator) {
+                if (2 * count + 1 < bounds.length) {
+                    bounds[2 * count] = pieceStart;
+                    bounds[2 * count + 1] = i;
+                }
+                count++;
+                pieceStart = i + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compares a range with an ASCII string.
+     */
+    public boolean equals(int start, int end, String ascii) {
+        if (end - start != ascii.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) != ascii.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String string(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+        return new String(scratch, 0, length, charsetOf(scratch, length));
+    }
+
+    /**
+     * Same as {@link #string(int, int)}, but equal ranges share one String
+     * instance and only the first occurrence allocates.
+     */
+    public String symbol(int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int mask = symbolValues.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (symbolValues[slot] != null) {
+            if (symbolHashes[slot] == hash && sameBytes(symbolBytes[slot], start, end)) {
+                return symbolValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String value = string(start, end);
+        symbolHashes[slot] = hash;
+        symbolBytes[slot] = Arrays.copyOf(scratch, end - start);
+        symbolValues[slot] = value;
+        if (++symbolCount * 2 > symbolValues.length) {
+            growSymbols();
+        }
+        return value;
+    }
+
+    private boolean sameBytes(byte[] bytes, int start, int end) {
+        if (bytes.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growSymbols() {
+        int[] oldHashes = symbolHashes;
+        byte[][] oldBytes = symbolBytes;
+        String[] oldValues = symbolValues;
+        symbolHashes = new int[oldValues.length * 2];
+        symbolBytes = new byte[oldValues.length * 2][];
+        symbolValues = new String[oldValues.length * 2];
+        int mask = symbolValues.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                while (symbolValues[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                symbolHashes[slot] = oldHashes[i];
+                symbolBytes[slot] = oldBytes[i];
+                symbolValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static Charset charsetOf(byte[] bytes, int length) {
+        int i = 0;
+        while (i < length) {
+            int b = bytes[i] & 0xFF;
+            int continuation;
+            if (b < 0x80) {
+                continuation = 0;
+            } else if (b >= 0xC2 && b < 0xE0) {
+                continuation = 1;
+            } else if (b >= 0xE0 && b < 0xF0) {
+                continuation = 2;
+            } else if (b >= 0xF0 && b < 0xF5) {
+                continuation = 3;
+            } else {
+                return StandardCharsets.ISO_8859_1;
+            }
+            if (i + continuation >= length) {
+                return StandardCharsets.ISO_8859_1;
+            }
+            for (int j = 1; j <= continuation; j++) {
+                if ((bytes[i + j] & 0xC0) != 0x80) {
+                    return StandardCharsets.ISO_8859_1;
+                }
+            }
+            i += continuation + 1;
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
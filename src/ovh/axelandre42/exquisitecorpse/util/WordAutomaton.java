@@ -0,0 +1,310 @@
+/*
+ * Copyright 2019 Alexandre Waeles
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ovh.axelandre42.exquisitecorpse.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Minimal acyclic automaton accepting a set of strings, which numbers them in
+ * sorted order: {@link #ordinal(String)} and {@link #string(int)} map a string
+ * to its rank and back.
+ * <p>
+ * Shared prefixes and suffixes are stored once, in a few flat arrays, so a
+ * set of inflected forms takes a fraction of the memory of its strings.
+ *
+ * @author Alexandre Waeles <www.axelandre42.ovh>
+ *
+ */
+public final class WordAutomaton {
+    // State s has transitions first[s] to first[s + 1] - 1, sorted by label.
+    private final int[] first;
+    // Label, target state and number of strings of the state ranked before
+    // those through the transition, side by side for locality.
+    private final int[] transitions;
+    private final BitSet accepting;
+    private final int size;
+
+    /**
+     * Mutable state, only used while building.
+     */
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] targets = new Node[0];
+        private boolean accepting;
+        private int hash;
+
+        private void add(char label, Node target) {
+            labels = Arrays.copyOf(labels, labels.length + 1);
+            targets = Arrays.copyOf(targets, targets.length + 1);
+            labels[labels.length - 1] = label;
+            targets[targets.length - 1] = target;
+        }
+
+        private Node last() {
+            return targets.length == 0 ? null : targets[targets.length - 1];
+        }
+
+        // Children are already unique, so they compare by identity.
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Node)) {
+                return false;
+            }
+            Node other = (Node) obj;
+            if (accepting != other.accepting || !Arrays.equals(labels, other.labels)) {
+                return false;
+            }
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] != other.targets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            if (hash == 0) {
+                int h = accepting ? 1 : 2;
+                for (int i = 0; i < labels.length; i++) {
+                    h = 31 * (31 * h + labels[i]) + System.identityHashCode(targets[i]);
+                }
+                hash = h;
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * @param words sorted, without duplicates.
+     */
+    public WordAutomaton(String[] words) {
+        Node root = new Node();
+        Map<Node, Node> register = new HashMap<>();
+        String previous = "";
+        for (int w = 0; w < words.length; w++) {
+            String word = words[w];
+            if (w > 0 && previous.compareTo(word) >= 0) {
+                throw new IllegalArgumentException("Words must be sorted and distinct: " + word + ".");
+            }
+            int common = 0;
+            while (common < previous.length() && common < word.length()
+                    && previous.charAt(common) == word.charAt(common)) {
+                common++;
+            }
+            Node node = root;
+            for (int i = 0; i < common; i++) {
+                node = node.last();
+            }
+            minimize(node, register);
+            for (int i = common; i < word.length(); i++) {
+                Node next = new Node();
+                node.add(word.charAt(i), next);
+                node = next;
+            }
+            node.accepting = true;
+            previous = word;
+        }
+        minimize(root, register);
+
+        // Numbers the states depth first, from the root.
+        Map<Node, Integer> ids = new IdentityHashMap<>();
+        Map<Node, Integer> sizes = new IdentityHashMap<>();
+        Node[] order = new Node[register.size() + 1];
+        int[] count = new int[1];
+        number(root, ids, order, count);
+        int states = ids.size();
+        first = new int[states + 1];
+        transitions = new int[3 * count[0]];
+        accepting = new BitSet(states);
+        int t = 0;
+        for (int s = 0; s < states; s++) {
+            Node node = order[s];
+            first[s] = t;
+            accepting.set(s, node.accepting);
+            int before = node.accepting ? 1 : 0;
+            for (int i = 0; i < node.labels.length; i++, t++) {
+                transitions[3 * t] = node.labels[i];
+                transitions[3 * t + 1] = ids.get(node.targets[i]);
+                transitions[3 * t + 2] = before;
+                before += size(node.targets[i], sizes);
+            }
+        }
+        first[states] = t;
+        size = size(root, sizes);
+    }
+
+    /**
+     * Registers the states below the last transition of a node, replacing
+     * those equivalent to a registered one.
+     */
+    private static void minimize(Node node, Map<Node, Node> register) {
+        Node child = node.last();
+        if (child == null) {
+            return;
+        }
+        minimize(child, register);
+        Node existing = register.putIfAbsent(child, child);
+        if (existing != null) {
+            node.targets[node.targets.length - 1] = existing;
+        }
+    }
+
+    private static void number(Node node, Map<Node, Integer> ids, Node[] order, int[] count) {
+        if (ids.containsKey(node)) {
+            return;
+        }
+        order[ids.size()] = node;
+        ids.put(node, ids.size());
+        count[0] += node.targets.length;
+        for (Node target : node.targets) {
+            number(target, ids, order, count);
+        }
+    }
+
+    private static int size(Node node, Map<Node, Integer> sizes) {
+        Integer size = sizes.get(node);
+        if (size == null) {
+            size = node.accepting ? 1 : 0;
+            for (Node target : node.targets) {
+                size += size(target, sizes);
+            }
+            sizes.put(node, size);
+        }
+        return size;
+    }
+
+    /**
+     * Number of strings.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Rank of the string among the accepted ones, or -1.
+     */
+    public int ordinal(CharSequence word) {
+        int state = 0;
+        int ordinal = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int t = find(state, word.charAt(i));
+            if (t < 0) {
+                return -1;
+            }
+            ordinal += transitions[3 * t + 2];
+            state = transitions[3 * t + 1];
+        }
+        return accepting.get(state) ? ordinal : -1;
+    }
+
+    public String string(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Ordinal: " + ordinal + ", Size: " + size);
+        }
+        StringBuilder word = new StringBuilder(16);
+        int state = 0;
+        while (ordinal > 0 || !accepting.get(state)) {
+            // Last transition ranked at or before the ordinal.
+            int low = first[state];
+            int high = first[state + 1] - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (transitions[3 * middle + 2] <= ordinal) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            ordinal -= transitions[3 * low + 2];
+            word.append((char) transitions[3 * low]);
+            state = transitions[3 * low + 1];
+        }
+        return word.toString();
+    }
+
+    /**
+     * Ordinal of the accepted string closest to the word by {@link EditDistance}, at most maxCost
+     * away and accepted by the filter, or -1. Ties go to the lowest ordinal.
+     * <p>
+     * Walks the automaton with one row of the distance table per depth, and leaves a branch as soon
+     * as its row can't beat the best string found so far. Small costs are tried first, as most words
+     * are only one edit away and a tight bound prunes much more.
+     */
+    public int nearest(CharSequence word, int maxCost, IntPredicate filter) {
+        int[][] rows = new int[word.length() + maxCost / EditDistance.EDIT + 2][];
+        rows[0] = EditDistance.firstRow(word.length());
+        for (int limit = Math.min(EditDistance.ACCENT, maxCost); limit <= maxCost; limit++) {
+            int[] best = { -1, limit + 1 };
+            nearest(0, 0, 0, word, rows, filter, best);
+            if (best[0] >= 0) {
+                return best[0];
+            }
+        }
+        return -1;
+    }
+
+    private void nearest(int state, int ordinal, int depth, CharSequence word, int[][] rows, IntPredicate filter,
+            int[] best) {
+        int[] row = rows[depth];
+        int cost = row[word.length()];
+        if (accepting.get(state) && cost < best[1] && filter.test(ordinal)) {
+            best[0] = ordinal;
+            best[1] = cost;
+        }
+        if (depth + 1 == rows.length) {
+            return;
+        }
+        if (rows[depth + 1] == null) {
+            rows[depth + 1] = new int[row.length];
+        }
+        for (int t = first[state]; t < first[state + 1]; t++) {
+            if (EditDistance.nextRow(row, rows[depth + 1], word, (char) transitions[3 * t]) < best[1]) {
+                nearest(transitions[3 * t + 1], ordinal + transitions[3 * t + 2], depth + 1, word, rows, filter,
+                        best);
+            }
+        }
+    }
+
+    private int find(int state, char label) {
+        int low = first[state];
+        int high = first[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int found = transitions[3 * middle];
+            if (found < label) {
+                low = middle + 1;
+            } else if (found > label) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}